@@ -8,35 +8,187 @@ class App {
 
         ChessBoard board = new ChessBoard(io); // this is probably important, I'm not sure though.
 
-        io.pushColor(ChessColorConf.MAIN_BG);
-        io.clearbuf();
+        // may run on the clock thread, so draws under io's lock
+        board.setGameOverHook(winner -> {
+            int row = dimensions.height - 3;
 
+            synchronized (io) {
+                io.bold();
+                io.mvwrite(row, 0, "Game Over!");
+                io.unbold();
+
+                io.mvwrite(row + 1, 0, ChessBoard.describeResult(winner));
+                io.mvcur(row + 2, 0);
+                io.flush();
+            }
+
+            System.exit(0);
+        });
+
+        // anything on the command line is taken as a FEN to start from
+        if (args.length > 0) {
+            board.loadFen(String.join(" ", args));
+        }
+
+        synchronized (io) {
+            io.pushColor(ChessColorConf.MAIN_BG);
+            io.clearbuf();
+        }
+
+        RawInput input = RawInput.start();
+        if (input != null) {
+            keyLoop(board, io, dimensions, input);
+        } else {
+            lineLoop(board, io, dimensions);
+        }
+
+        synchronized (io) {
+            io.popColor();
+
+            io.cls();
+            io.destruct();
+        }
+    }
+
+    // a line at a time: every command, cursor steps included, needs Enter
+    private static void lineLoop(
+        ChessBoard board,
+        ConsoleIO io,
+        SConsole.ConsoleDimensions dimensions
+    ) {
         while (true) {
-            boolean redraw = board.draw();
+            // the frame is finished before the lock is let go, so the clock
+            // can redraw the timers while we wait for the line
+            synchronized (io) {
+                if (board.draw()) io.redraw();
 
-            io.mvcur(dimensions.height - 2, 0);
+                io.mvcur(dimensions.height - 2, 0);
+            }
             String command = io.poll().trim();
 
-            // magic clearing commands :)
-            io.mvcur(dimensions.height - 2, 0);
-            for (int i = 0; i < command.length() * 2; ++i) {
-                System.out.print(" ");
+            synchronized (io) {
+                // magic clearing commands :)
+                io.mvcur(dimensions.height - 2, 0);
+                io.write(" ".repeat(command.length() * 2));
+
+                io.mvcur(dimensions.height - 2, 0);
             }
 
-            io.mvcur(dimensions.height - 2, 0);
+            if (!runCommand(command, board, io, dimensions)) break;
+        }
+    }
+
+    /**
+     * A key at a time: the arrow keys move the selection straight away,
+     * and anything typed goes into a command line that Enter runs (an
+     * empty one selects, the same as in line mode). Keys that arrive
+     * together are all handled before the next frame is drawn.
+     *
+     * Each frame is drawn and sent under io's lock, so the clock thread's
+     * timer updates go out between frames, never halfway through one.
+     */
+    private static void keyLoop(
+        ChessBoard board,
+        ConsoleIO io,
+        SConsole.ConsoleDimensions dimensions,
+        RawInput input
+    ) {
+        int row = dimensions.height - 2;
+        int[] keys = new int[64];
+        StringBuilder line = new StringBuilder();
+        int shown = 0; // how long the command line was when last drawn
+
+        while (true) {
+            synchronized (io) {
+                if (board.draw()) io.redraw();
+
+                io.mvwrite(row, 0, line.toString());
+                for (int i = line.length(); i < shown; ++i) {
+                    io.mvputch(row, i, ' ');
+                }
+                shown = line.length();
+                io.mvcur(row, line.length());
+                io.endFrame();
+            }
 
-            if (command.equalsIgnoreCase("exit")) break;
+            input.await();
+            int count = input.drain(keys);
 
-            if (command.equalsIgnoreCase("redraw")) redraw = true;
+            for (int i = 0; i < count; ++i) {
+                String command = null;
 
-            redraw = board.processCommand(command) || redraw;
+                switch (keys[i]) {
+                    case RawInput.KEY_UP:
+                        command = "w";
+                        break;
+                    case RawInput.KEY_DOWN:
+                        command = "s";
+                        break;
+                    case RawInput.KEY_LEFT:
+                        command = "a";
+                        break;
+                    case RawInput.KEY_RIGHT:
+                        command = "d";
+                        break;
+                    case RawInput.KEY_ENTER:
+                        command = line.toString().trim();
+                        line.setLength(0);
+                        break;
+                    case RawInput.KEY_BACKSPACE:
+                        if (line.length() > 0) line.setLength(line.length() - 1);
+                        break;
+                    case RawInput.KEY_ESCAPE:
+                        line.setLength(0);
+                        break;
+                    default:
+                        line.appendCodePoint(keys[i]);
+                        break;
+                }
 
-            if (redraw) io.redraw();
+                if (
+                    command != null &&
+                    !runCommand(command, board, io, dimensions)
+                ) {
+                    return;
+                }
+            }
         }
+    }
+
+    // runs one command, false if it was the one to quit
+    private static boolean runCommand(
+        String command,
+        ChessBoard board,
+        ConsoleIO io,
+        SConsole.ConsoleDimensions dimensions
+    ) {
+        if (command.equalsIgnoreCase("exit")) return false;
+
+        boolean redraw = command.equalsIgnoreCase("redraw");
+
+        // what drawing the last frame cost, for slow remote terminals
+        if (command.equalsIgnoreCase("stats")) {
+            synchronized (io) {
+                io.mvwrite(
+                    dimensions.height - 1,
+                    0,
+                    "last frame " +
+                    io.getLastFrameBytes() +
+                    " bytes in " +
+                    io.getLastFrameFlushes() +
+                    " writes, " +
+                    io.getBytesWritten() +
+                    " bytes in " +
+                    io.getFlushes() +
+                    " writes in all"
+                );
+            }
+        }
+
+        redraw = board.processCommand(command) || redraw;
 
-        io.popColor();
+        if (redraw) io.redraw();
 
-        io.cls();
-        io.destruct();
+        return true;
     }
 }
@@ -0,0 +1,171 @@
+package source;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * Micro benchmarks for the move generator, plus a perft run that has to
+ * match the known node counts before any timings are trusted.
+ *
+ * Each benchmark is warmed up, then timed over several rounds and the best
+ * round is reported, which keeps JIT and GC noise out of the numbers.
+ *
+ * Usage: java -cp bin source.Bench
+ */
+public class Bench {
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 5;
+
+    // a quiet Italian game middlegame with every piece type still around
+    private static final String[] MIDDLEGAME_LINE = {
+        "e2e4",
+        "e7e5",
+        "g1f3",
+        "b8c6",
+        "f1c4",
+        "f8c5",
+        "d2d3",
+        "g8f6",
+        "c2c3",
+        "d7d6",
+        "b1d2",
+        "a7a6",
+    };
+
+    // read by nothing, it just stops the JIT from dropping the work
+    private static long sink = 0;
+
+    public static void main(String[] args) {
+        boolean ok = checkPerft(
+            "startpos",
+            Position.startPosition(),
+            5,
+            4865609L
+        );
+        ok &= checkPerft(
+            "endgame",
+            Position.fromFen("8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1"),
+            5,
+            674624L
+        );
+        // castling, en passant and promotions all over the place
+        ok &= checkPerft(
+            "kiwipete",
+            Position.fromFen(
+                "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq -"
+            ),
+            4,
+            4085603L
+        );
+        ok &= checkPerft(
+            "promotions",
+            Position.fromFen(
+                "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq -"
+            ),
+            4,
+            422333L
+        );
+
+        if (!ok) {
+            System.out.println("perft mismatch, not running benchmarks");
+            System.exit(1);
+        }
+
+        System.out.println();
+        benchPosition("startpos", new ChessBoard());
+
+        ChessBoard middlegame = new ChessBoard();
+        for (String move : MIDDLEGAME_LINE) {
+            middlegame.makeMove(middlegame.position.findMove(move));
+        }
+        benchPosition("middlegame", middlegame);
+    }
+
+    private static boolean checkPerft(
+        String name,
+        Position position,
+        int depth,
+        long expected
+    ) {
+        long start = System.nanoTime();
+        long nodes = new Perft(position).perft(depth);
+        long elapsed = Math.max(System.nanoTime() - start, 1);
+
+        boolean ok = nodes == expected;
+        System.out.printf(
+            "perft %-12s depth %d: %d (%s) %d nps%n",
+            name,
+            depth,
+            nodes,
+            ok ? "ok" : "expected " + expected,
+            nodes * 1000000000L / elapsed
+        );
+
+        return ok;
+    }
+
+    private static void benchPosition(String name, ChessBoard board) {
+        Position position = board.position;
+        int[] buf = board.moveBuffer.get(1);
+
+        for (int type = Position.PAWN; type <= Position.KING; ++type) {
+            List<ChessPiece> pieces = new ArrayList<ChessPiece>();
+            for (ChessPiece[] row : board.board) {
+                for (ChessPiece piece : row) {
+                    if (
+                        piece != null &&
+                        piece.getType() == type &&
+                        piece.getColor() == board.colorPlaying
+                    ) {
+                        pieces.add(piece);
+                    }
+                }
+            }
+
+            run(
+                name + " getValidMoves/" + pieces.get(0).getName(),
+                200000,
+                () -> {
+                    long n = 0;
+                    for (ChessPiece piece : pieces) {
+                        n += piece.getValidMoves(board).size();
+                    }
+                    return n;
+                }
+            );
+        }
+
+        run(name + " checkInCheck", 2000000, () ->
+            board.checkInCheck() ? 1 : 0
+        );
+        run(name + " generateLegalMoves", 1000000, () ->
+            position.generateLegalMoves(buf, 0, -1L)
+        );
+        run(name + " generateMoves (pseudo)", 1000000, () ->
+            position.generateMoves(position.getSideToMove(), buf, 0, -1L)
+        );
+    }
+
+    private static void run(String name, int ops, LongSupplier body) {
+        for (int i = 0; i < WARMUP_ROUNDS; ++i) {
+            measure(ops, body);
+        }
+
+        double best = Double.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; ++i) {
+            best = Math.min(best, measure(ops, body));
+        }
+
+        System.out.printf("%-44s %10.1f ns/op%n", name, best);
+    }
+
+    private static double measure(int ops, LongSupplier body) {
+        long start = System.nanoTime();
+        for (int i = 0; i < ops; ++i) {
+            sink += body.getAsLong();
+        }
+        return (System.nanoTime() - start) / (double) ops;
+    }
+}
@@ -0,0 +1,185 @@
+package source;
+
+/**
+ * Static helpers and lookup tables for 64-bit bitboards.
+ *
+ * Squares are numbered {@code rank * 8 + file} using the same orientation as
+ * {@code ChessBoard.board}: rank 0 is black's back rank (the "8" rank) and
+ * file 0 is the a-file. Bit {@code n} of a bitboard is square {@code n}.
+ */
+public final class Bitboard {
+
+    public static final long FILE_A = 0x0101010101010101L;
+    public static final long FILE_H = FILE_A << 7;
+
+    public static final long RANK_8 = 0xFFL;
+    public static final long RANK_7 = RANK_8 << 8;
+    public static final long RANK_6 = RANK_8 << 16;
+    public static final long RANK_5 = RANK_8 << 24;
+    public static final long RANK_4 = RANK_8 << 32;
+    public static final long RANK_3 = RANK_8 << 40;
+    public static final long RANK_2 = RANK_8 << 48;
+    public static final long RANK_1 = RANK_8 << 56;
+
+    // a8 is a light square
+    public static final long LIGHT_SQUARES = 0xAA55AA55AA55AA55L;
+
+    public static final long[] KNIGHT_ATTACKS = new long[64];
+    public static final long[] KING_ATTACKS = new long[64];
+    // indexed [color][square], the squares a pawn of that color attacks
+    public static final long[][] PAWN_ATTACKS = new long[2][64];
+
+    // squares strictly between two aligned squares, 0 if they don't share a
+    // rank, file or diagonal
+    public static final long[][] BETWEEN = new long[64][64];
+    // the whole rank, file or diagonal through two aligned squares
+    public static final long[][] LINE = new long[64][64];
+
+    static final int[][] ROOK_DIRECTIONS = {
+        { 0, 1 },
+        { 0, -1 },
+        { 1, 0 },
+        { -1, 0 },
+    };
+    static final int[][] BISHOP_DIRECTIONS = {
+        { 1, 1 },
+        { -1, -1 },
+        { 1, -1 },
+        { -1, 1 },
+    };
+
+    static {
+        int[][] knightOffsets = {
+            { 2, 1 },
+            { 2, -1 },
+            { 1, 2 },
+            { -1, 2 },
+            { -2, 1 },
+            { -2, -1 },
+            { 1, -2 },
+            { -1, -2 },
+        };
+        int[][] kingOffsets = {
+            { 1, 0 },
+            { 1, -1 },
+            { 1, 1 },
+            { -1, 0 },
+            { -1, -1 },
+            { -1, 1 },
+            { 0, -1 },
+            { 0, 1 },
+        };
+
+        for (int sq = 0; sq < 64; ++sq) {
+            int rank = rankOf(sq), file = fileOf(sq);
+
+            KNIGHT_ATTACKS[sq] = leaperAttacks(rank, file, knightOffsets);
+            KING_ATTACKS[sq] = leaperAttacks(rank, file, kingOffsets);
+
+            // white pawns move towards rank 0, black pawns towards rank 7
+            PAWN_ATTACKS[0][sq] = leaperAttacks(
+                rank,
+                file,
+                new int[][] { { -1, -1 }, { -1, 1 } }
+            );
+            PAWN_ATTACKS[1][sq] = leaperAttacks(
+                rank,
+                file,
+                new int[][] { { 1, -1 }, { 1, 1 } }
+            );
+        }
+
+        for (int a = 0; a < 64; ++a) {
+            for (int[][] dirs : new int[][][] {
+                ROOK_DIRECTIONS,
+                BISHOP_DIRECTIONS,
+            }) {
+                long fromA = slidingAttacks(a, 0L, dirs);
+
+                for (int b = 0; b < 64; ++b) {
+                    if ((fromA & bit(b)) == 0) continue;
+
+                    long fromB = slidingAttacks(b, 0L, dirs);
+                    BETWEEN[a][b] =
+                        slidingAttacks(a, bit(b), dirs) &
+                        slidingAttacks(b, bit(a), dirs);
+                    LINE[a][b] = (fromA & fromB) | bit(a) | bit(b);
+                }
+            }
+        }
+    }
+
+    private Bitboard() {}
+
+    public static int square(int rank, int file) {
+        return rank * 8 + file;
+    }
+
+    public static int rankOf(int square) {
+        return square >>> 3;
+    }
+
+    public static int fileOf(int square) {
+        return square & 7;
+    }
+
+    public static long bit(int square) {
+        return 1L << square;
+    }
+
+    public static boolean inBounds(int rank, int file) {
+        return rank >= 0 && rank < 8 && file >= 0 && file < 8;
+    }
+
+    public static int lsb(long bb) {
+        return Long.numberOfTrailingZeros(bb);
+    }
+
+    public static long rookAttacks(int square, long occupied) {
+        return Magic.rookAttacks(square, occupied);
+    }
+
+    public static long bishopAttacks(int square, long occupied) {
+        return Magic.bishopAttacks(square, occupied);
+    }
+
+    public static long queenAttacks(int square, long occupied) {
+        return (
+            rookAttacks(square, occupied) | bishopAttacks(square, occupied)
+        );
+    }
+
+    // walks each ray a square at a time, only used to build the magic tables
+    static long slidingAttacks(int square, long occupied, int[][] directions) {
+        long attacks = 0L;
+
+        for (int[] dir : directions) {
+            int rank = rankOf(square) + dir[0];
+            int file = fileOf(square) + dir[1];
+
+            while (inBounds(rank, file)) {
+                long b = bit(square(rank, file));
+                attacks |= b;
+
+                if ((occupied & b) != 0) break;
+
+                rank += dir[0];
+                file += dir[1];
+            }
+        }
+
+        return attacks;
+    }
+
+    private static long leaperAttacks(int rank, int file, int[][] offsets) {
+        long attacks = 0L;
+
+        for (int[] off : offsets) {
+            if (inBounds(rank + off[0], file + off[1])) {
+                attacks |= bit(square(rank + off[0], file + off[1]));
+            }
+        }
+
+        return attacks;
+    }
+}
@@ -2,6 +2,11 @@ package source;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.IntConsumer;
+import source.search.Search;
+import source.search.SearchLimits;
+import source.search.SearchResult;
+import source.search.TranspositionTable;
 
 class ChessTimer implements Runnable {
 
@@ -69,6 +74,16 @@ class ChessTimer implements Runnable {
         return aActive ? timerA : timerB;
     }
 
+    // the clocks as search limits, so the engine plays to the same clock
+    public SearchLimits searchLimits() {
+        return SearchLimits.clock(
+            timerA * 1000L,
+            timerB * 1000L,
+            interval * 1000L,
+            interval * 1000L
+        );
+    }
+
     public void unpause() {
         paused = false;
     }
@@ -84,9 +99,32 @@ class ChessTimer implements Runnable {
 
 class ChessBoard {
 
+    // endGame() results; 0 and 1 are the color that won
+    public static final int NO_RESULT = -100;
+    public static final int WHITE_WINS = 0;
+    public static final int BLACK_WINS = 1;
+    public static final int STALEMATE = -1;
+    public static final int INSUFFICIENT_MATERIAL = -2;
+    public static final int REPETITION = -3;
+    public static final int FIFTY_MOVES = -4;
+    // any other draw, such as one a tournament adjudicates
+    public static final int DRAW = -5;
+
+    // what the ChessPiece view needs to take a move back, one per move made
+    private static class ViewUndo {
+
+        int move;
+        ChessPiece mover;
+        ChessPiece captured;
+        ChessPiece rook;
+        int moverLastMoveId;
+        int rookLastMoveId;
+    }
+
     ConsoleIO io;
 
-    ChessPiece[][] board;
+    Position position;
+    ChessPiece[][] board; // view over position, rebuilt by buildView()
 
     int colorPlaying = 0;
     ChessTimer timer;
@@ -96,42 +134,90 @@ class ChessBoard {
     int selX = -1, selY = -1;
     int lockX = -1, lockY = -1;
 
-    ArrayList<int[]> hot;
-    boolean superHot = true;
+    // squares to redraw next frame, one bit per square
+    long dirty = -1L;
 
     List<ChessPiece.Move> moves;
+    // the to squares of moves, shown as hints on the board
+    long moveHints = 0L;
+    MoveBuffer moveBuffer = new MoveBuffer();
+
+    private ArrayList<ViewUndo> undoStack = new ArrayList<ViewUndo>();
+
+    private TranspositionTable tt;
+
+    private int result = NO_RESULT;
+    // told the result when the game ends, e.g. to report it and exit
+    private IntConsumer gameOverHook;
+
+    // what a pawn reaching the last rank turns into, picked with =q, =r, =b
+    // or =n before the move is made
+    private int promotionType = Position.QUEEN;
 
     public ChessBoard(ConsoleIO io) {
         this.io = io;
 
         this.timer = new ChessTimer(60 * 5, 60 * 5, 5, this);
         Thread timerThread = new Thread(timer);
+        // the clock mustn't keep the program running once it's quit
+        timerThread.setDaemon(true);
         timerThread.start();
 
         setupBoard();
     }
 
+    // a board with no console or clock attached, for tools and benchmarks
+    ChessBoard() {
+        setupBoard();
+    }
+
     public void setupBoard() {
-        this.board = new ChessPiece[8][8];
-        this.hot = new ArrayList<int[]>();
+        this.position = Position.startPosition();
         this.moves = new ArrayList<ChessPiece.Move>();
 
-        initializePieces(0, 1, 1); // black
-        initializePieces(7, 6, 0); // white
+        buildView();
+    }
+
+    // headless board set up from a FEN string
+    public static ChessBoard fromFen(String fen) {
+        ChessBoard board = new ChessBoard();
+        board.loadFen(fen);
+        return board;
+    }
+
+    public void loadFen(String fen) {
+        position.setFen(fen);
+        colorPlaying = position.getSideToMove();
+        moveIdx = (position.getFullmoveNumber() - 1) * 2 + colorPlaying;
+        undoStack.clear();
+        setMoves(null);
+        lockX = lockY = -1;
+        result = NO_RESULT;
+
+        buildView();
+        dirty = -1L;
+        checkInCheck();
     }
 
-    private void initializePieces(int majorRank, int minorRank, int color) {
-        board[majorRank][0] = new Rook(majorRank, 0, color);
-        board[majorRank][1] = new Knight(majorRank, 1, color);
-        board[majorRank][2] = new Bishop(majorRank, 2, color);
-        board[majorRank][3] = new Queen(majorRank, 3, color);
-        board[majorRank][4] = new King(majorRank, 4, color);
-        board[majorRank][5] = new Bishop(majorRank, 5, color);
-        board[majorRank][6] = new Knight(majorRank, 6, color);
-        board[majorRank][7] = new Rook(majorRank, 7, color);
+    public String toFen() {
+        return position.toFen();
+    }
+
+    // (re)creates the ChessPiece objects from the bitboards
+    private void buildView() {
+        this.board = new ChessPiece[8][8];
 
-        for (int i = 0; i < 8; ++i) {
-            board[minorRank][i] = new Pawn(minorRank, i, color);
+        for (int sq = 0; sq < 64; ++sq) {
+            int type = position.pieceAt(sq);
+            if (type == Position.EMPTY) continue;
+
+            int rank = Bitboard.rankOf(sq), file = Bitboard.fileOf(sq);
+            board[rank][file] = ChessPiece.create(
+                type,
+                rank,
+                file,
+                position.colorAt(sq)
+            );
         }
     }
 
@@ -140,180 +226,251 @@ class ChessBoard {
     }
 
     public boolean inBounds(int row, int col) {
-        return row >= 0 && row < 8 && col >= 0 && col < 8;
+        return Bitboard.inBounds(row, col);
     }
 
     public boolean occupiedByAlly(int row, int col, ChessPiece piece) {
         return (
-            isOccupied(row, col) &&
-            board[row][col].getColor() == piece.getColor()
+            (position.colorOccupancy(piece.getColor()) &
+                Bitboard.bit(Bitboard.square(row, col))) !=
+            0
         );
     }
 
     public boolean occupiedByAlly(int row, int col) {
         return (
-            isOccupied(row, col) && board[row][col].getColor() == colorPlaying
+            (position.colorOccupancy(colorPlaying) &
+                Bitboard.bit(Bitboard.square(row, col))) !=
+            0
         );
     }
 
     public boolean isOccupied(int rank, int file) {
-        return board[rank][file] != null;
+        return (
+            (position.occupied() & Bitboard.bit(Bitboard.square(rank, file))) !=
+            0
+        );
     }
 
     public int[] findKing() {
-        for (int y = 0; y < board.length; ++y) {
-            for (int x = 0; x < board[y].length; ++x) {
-                if (
-                    isOccupied(y, x) && board[y][x].getColor() == colorPlaying
-                ) {
-                    if (board[y][x].getName().equals("King")) {
-                        return new int[] { y, x };
-                    }
-                }
-            }
+        if (position.pieces(colorPlaying, Position.KING) == 0) {
+            return new int[] { -1, -1 };
         }
 
-        return new int[] { -1, -1 };
+        int sq = position.kingSquare(colorPlaying);
+        return new int[] { Bitboard.rankOf(sq), Bitboard.fileOf(sq) };
     }
 
     public boolean checkInCheck() {
-        inCheck = false;
+        inCheck = position.isInCheck();
+        return inCheck;
+    }
 
-        int[] kingCoords = findKing(); // from the screen to the ring to the pen to the king where's my crown that's my bling always drama when I ring
+    public boolean hasLegalMoves() {
+        int[] buf = moveBuffer.get(0);
+        return position.generateLegalMoves(buf, 0, -1L) > 0;
+    }
 
-        for (ChessPiece[] pieces : board) {
-            for (ChessPiece piece : pieces) {
-                if (piece != null && piece.getColor() != colorPlaying) {
-                    List<ChessPiece.Move> moves = piece.getValidMoves(this);
+    public boolean checkCheckmate() {
+        return inCheck && !hasLegalMoves();
+    }
 
-                    for (ChessPiece.Move move : moves) {
-                        if (move.equals(-1, -1, kingCoords[0], kingCoords[1])) {
-                            inCheck = true;
-                            return true;
-                        }
-                    }
-                }
-            }
-        }
+    public boolean checkStalemate() {
+        return !inCheck && !hasLegalMoves();
+    }
 
-        return false;
+    public boolean checkInsufficientMaterial() {
+        return position.isInsufficientMaterial();
     }
 
-    public boolean checkStalemate() {
-        for (ChessPiece[] pieces : board) {
-            for (ChessPiece piece : pieces) {
-                if (piece != null && piece.getColor() == colorPlaying) {
-                    List<ChessPiece.Move> moves = piece.getValidMoves(this);
-                    if (moves.size() > 0) {
-                        return false;
-                    }
-                }
-            }
-        }
+    public boolean checkThreefoldRepetition() {
+        return position.repetitions() >= 2;
+    }
 
-        return true;
+    public boolean checkFiftyMoveRule() {
+        return position.isFiftyMoveRule();
     }
 
-    public boolean checkInsufficientMaterial() {
-        return false;
-        /*
-        boolean whiteInsufficient = false;
-        boolean blackInsufficient = false;
+    public void setGameOverHook(IntConsumer hook) {
+        this.gameOverHook = hook;
+    }
 
-        int bishopValue = 0;
+    public boolean isGameOver() {
+        return result != NO_RESULT;
+    }
 
-        int whb = 0, whk = 0, wht = 0, bhb = 0, bhk = 0, bht = 0;
+    public int getResult() {
+        return result;
+    }
 
-        for (ChessPiece[] pieces : board) {
-            for (ChessPiece piece : pieces) {
-                if (piece == null) continue;
+    // the clock thread can run out of time while a move is being made, so
+    // only the first call counts
+    public synchronized void endGame(int winner) {
+        if (result != NO_RESULT) return;
+        result = winner;
 
-                if (
-                    piece.getName().equals("Pawn") ||
-                    piece.getName().equals("Rook") ||
-                    piece.getName().equals("Queen")
-                ) {
-                    return false;
-                }
+        if (timer != null) timer.stop();
+        if (gameOverHook != null) gameOverHook.accept(winner);
+    }
 
-                if (piece.getColor() == 0) {
-                    wht++;
-                    if (piece.getName().equals("Bishop")) {
-                        whb++;
-                        bishopValue += piece.getFile();
-                    } else if (piece.getName().equals("Knight")) {
-                        whk++;
-                    }
-                } else {
-                    bht++;
-                    if (piece.getName().equals("Bishop")) {
-                        bhb++;
-                        bishopValue += piece.getFile();
-                    } else if (piece.getName().equals("Knight")) {
-                        bhk++;
-                    }
-                }
-            }
+    public static String describeResult(int winner) {
+        switch (winner) {
+            case FIFTY_MOVES:
+                return "Draw by the Fifty Move Rule";
+            case REPETITION:
+                return "Draw by Threefold Repetition";
+            case INSUFFICIENT_MATERIAL:
+                return "Draw by Insufficient Material";
+            case STALEMATE:
+                return "Draw by Stalemate";
+            case DRAW:
+                return "Draw";
+            case WHITE_WINS:
+                return "White wins!";
+            case BLACK_WINS:
+                return "Black wins!";
+            default:
+                return "bro I got no clue who won :skull:";
         }
+    }
 
-        if (
-            whb == 1 && bhb == 1 && whk == 0 && bhk == 0 && bishopValue % 2 == 0
-        ) {
-            return true;
-        } else {
-            if (whb + whk < 2 && bhb + bhk < 2) {
-                return true;
-            }
+    private ChessPiece viewAt(int square) {
+        return board[Bitboard.rankOf(square)][Bitboard.fileOf(square)];
+    }
 
-            if (whk == 2 && bhb + bhk == 0) {
-                return true;
-            }
+    private void setView(int square, ChessPiece piece) {
+        int rank = Bitboard.rankOf(square), file = Bitboard.fileOf(square);
 
-            return false;
-            }*/
+        board[rank][file] = piece;
+        dirty |= Bitboard.bit(square);
     }
 
-    public void endGame(int winner) {
-        timer.stop();
+    private void markDirty(int rank, int file) {
+        if (inBounds(rank, file)) {
+            dirty |= Bitboard.bit(Bitboard.square(rank, file));
+        }
+    }
 
-        io.bold();
-        System.out.println("Game Over!");
-        io.unbold();
+    // the moves to hint at, null for none; both old and new hints redraw
+    private void setMoves(List<ChessPiece.Move> moves) {
+        dirty |= moveHints;
+        moveHints = 0L;
+        this.moves = moves == null
+            ? new ArrayList<ChessPiece.Move>()
+            : moves;
 
-        String result = "";
-        switch (winner) {
-            case -2:
-                result = "Draw by Insufficient Material";
-                break;
-            case -1:
-                result = "Draw by Stalemate";
-                break;
-            case 0:
-                result = "White wins!";
-                break;
-            case 1:
-                result = "Black wins!";
-                break;
+        for (ChessPiece.Move move : this.moves) {
+            moveHints |= Bitboard.bit(PackedMove.to(move.getPacked()));
+        }
+        dirty |= moveHints;
+    }
+
+    // the rook's from and to squares for a castling move, or null
+    private int[] castlingRook(int move) {
+        int to = PackedMove.to(move);
+
+        switch (PackedMove.flags(move)) {
+            case PackedMove.KING_CASTLE:
+                return new int[] { to + 1, to - 1 };
+            case PackedMove.QUEEN_CASTLE:
+                return new int[] { to - 2, to + 1 };
             default:
-                result = "bro I got no clue who won :skull:";
-                break;
+                return null;
+        }
+    }
+
+    public void makeMove(int move) {
+        int from = PackedMove.from(move);
+        int to = PackedMove.to(move);
+        int captureSquare = PackedMove.flags(move) == PackedMove.EP_CAPTURE
+            ? Position.epCaptureSquare(from, to)
+            : to;
+        int[] rookSquares = castlingRook(move);
+
+        ViewUndo undo = new ViewUndo();
+        undo.move = move;
+        undo.mover = viewAt(from);
+        undo.moverLastMoveId = undo.mover.lastMoveId;
+        undo.captured = PackedMove.isCapture(move)
+            ? viewAt(captureSquare)
+            : null;
+        if (rookSquares != null) {
+            undo.rook = viewAt(rookSquares[0]);
+            undo.rookLastMoveId = undo.rook.lastMoveId;
         }
+        undoStack.add(undo);
 
-        System.out.println(result);
+        position.makeMove(move);
 
-        System.exit(0);
+        setView(captureSquare, null);
+        setView(from, null);
+
+        ChessPiece placed = undo.mover;
+        if (PackedMove.isPromotion(move)) {
+            placed = ChessPiece.create(
+                PackedMove.promotionType(move),
+                Bitboard.rankOf(to),
+                Bitboard.fileOf(to),
+                undo.mover.getColor()
+            );
+        }
+
+        undo.mover.move(Bitboard.rankOf(to), Bitboard.fileOf(to));
+        undo.mover.lastMoveId = moveIdx;
+        setView(to, placed);
+
+        if (undo.rook != null) {
+            undo.rook.move(
+                Bitboard.rankOf(rookSquares[1]),
+                Bitboard.fileOf(rookSquares[1])
+            );
+            undo.rook.lastMoveId = moveIdx;
+            setView(rookSquares[0], null);
+            setView(rookSquares[1], undo.rook);
+        }
+
+        colorPlaying = position.getSideToMove();
+        moveIdx++;
     }
 
-    private ChessPiece[][] deepCopyBoard() {
-        ChessPiece[][] copy = new ChessPiece[8][8];
-        /*for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                if (board[i][j] != null) {
-                    copy[i][j] = board[i][j].copy();
-                }
-            }
-            }*/
-        return copy;
+    public boolean unmakeMove() {
+        if (undoStack.isEmpty()) return false;
+
+        ViewUndo undo = undoStack.remove(undoStack.size() - 1);
+        int move = undo.move;
+        int from = PackedMove.from(move);
+        int to = PackedMove.to(move);
+
+        position.unmakeMove(move);
+
+        setView(to, null);
+        setView(from, undo.mover);
+        undo.mover.unmove(
+            Bitboard.rankOf(from),
+            Bitboard.fileOf(from),
+            undo.moverLastMoveId
+        );
+
+        if (undo.captured != null) {
+            setView(undo.captured.getSquare(), undo.captured);
+        }
+
+        if (undo.rook != null) {
+            int[] rookSquares = castlingRook(move);
+
+            setView(rookSquares[1], null);
+            setView(rookSquares[0], undo.rook);
+            undo.rook.unmove(
+                Bitboard.rankOf(rookSquares[0]),
+                Bitboard.fileOf(rookSquares[0]),
+                undo.rookLastMoveId
+            );
+        }
+
+        colorPlaying = position.getSideToMove();
+        moveIdx--;
+
+        return true;
     }
 
     private void drawSquare(
@@ -353,8 +510,7 @@ class ChessBoard {
 
         if (
             inCheck &&
-            isOccupied(rank, file) &&
-            board[rank][file].getName().equals("King")
+            position.pieceAt(Bitboard.square(rank, file)) == Position.KING
         ) {
             if (white) io.pushColor(ChessColorConf.LIGHT_RED);
             else io.pushColor(ChessColorConf.DARK_RED);
@@ -381,21 +537,17 @@ class ChessBoard {
             io.mvputch(row, col + 5, '◣');
         }
 
-        for (ChessPiece.Move move : moves) {
-            if (move.equals(-1, -1, rank, file)) {
-                if (isOccupied(rank, file) && !occupiedByAlly(rank, file)) {
-                    io.mvputch(row, col + 1, '◆');
-                    io.mvputch(row + 2, col + 1, '◆');
-                    io.mvputch(row + 2, col + 5, '◆');
-                    io.mvputch(row, col + 5, '◆');
-                } else {
-                    io.mvputch(row, col + 1, '⟋');
-                    io.mvputch(row + 2, col + 1, '⟍');
-                    io.mvputch(row + 2, col + 5, '⟋');
-                    io.mvputch(row, col + 5, '⟍');
-                }
-
-                hot.add(new int[] { rank, file });
+        if ((moveHints & Bitboard.bit(Bitboard.square(rank, file))) != 0) {
+            if (isOccupied(rank, file) && !occupiedByAlly(rank, file)) {
+                io.mvputch(row, col + 1, '◆');
+                io.mvputch(row + 2, col + 1, '◆');
+                io.mvputch(row + 2, col + 5, '◆');
+                io.mvputch(row, col + 5, '◆');
+            } else {
+                io.mvputch(row, col + 1, '⟋');
+                io.mvputch(row + 2, col + 1, '⟍');
+                io.mvputch(row + 2, col + 5, '⟋');
+                io.mvputch(row, col + 5, '⟍');
             }
         }
 
@@ -418,17 +570,26 @@ class ChessBoard {
         return String.format("%02d:%02d", minutes, remainingSeconds);
     }
 
+    // called every second from the clock thread, so shows the change itself;
+    // holding io keeps it from landing in the middle of the render loop's
+    // frame, whose style and half-drawn cells it would otherwise send
     public void updateTimerDisplay(int whiteTimeSeconds, int blackTimeSeconds) {
-        System.out.print("\033[s");
+        synchronized (io) {
+            drawTimers(whiteTimeSeconds, blackTimeSeconds);
+            io.present();
+            io.flush();
+        }
+    }
+
+    private void drawTimers(int whiteTimeSeconds, int blackTimeSeconds) {
         io.pushColor(ChessColorConf.TIMER_BG);
         io.mvwrite(1, 2, " " + formatTime(blackTimeSeconds) + " ");
         io.mvwrite(2 + 8 * 3, 2, " " + formatTime(whiteTimeSeconds) + " ");
         io.popColor();
-        System.out.print("\033[u");
     }
 
     public boolean draw() {
-        updateTimerDisplay(timer.getWhiteTime(), timer.getBlackTime());
+        drawTimers(timer.getWhiteTime(), timer.getBlackTime());
         io.mvwrite(1, 10, "Black");
         io.mvwrite(2 + 8 * 3, 10, "White");
 
@@ -444,24 +605,13 @@ class ChessBoard {
             }
         }
 
-        if (hot != null && hot.size() > 0) {
-            List<int[]> copy = new ArrayList<int[]>(hot);
-            hot.clear();
-            for (int[] a : copy) {
-                if (a[0] >= 0 && a[1] >= 0 && a[0] < 8 && a[1] < 8) {
-                    drawSquare(a[0], a[1]);
-                }
-            }
-        }
-
-        if (superHot) {
-            superHot = false;
-
-            for (int rank = 0; rank < 8; rank++) {
-                for (int file = 0; file < 8; file++) {
-                    drawSquare(rank, file);
-                }
-            }
+        // each square at most once, however many times it was touched
+        long squares = dirty;
+        dirty = 0L;
+        while (squares != 0) {
+            int sq = Bitboard.lsb(squares);
+            squares &= squares - 1;
+            drawSquare(Bitboard.rankOf(sq), Bitboard.fileOf(sq));
         }
 
         io.pushColor(ChessColorConf.LIGHT_DARK);
@@ -497,14 +647,12 @@ class ChessBoard {
             selX = coord[1];
             selY = coord[0];
 
-            if (selX > -1 && selY > -1) {
-                hot.add(coord);
-            }
+            markDirty(selY, selX);
 
             return;
         }
 
-        hot.add(new int[] { selY, selX });
+        markDirty(selY, selX);
 
         selX += xoff;
         selY += yoff;
@@ -514,7 +662,7 @@ class ChessBoard {
         if (selX > 7) selX = 0;
         if (selY > 7) selY = 0;
 
-        hot.add(new int[] { selY, selX });
+        markDirty(selY, selX);
     }
 
     public boolean processCommand(String command) {
@@ -538,25 +686,22 @@ class ChessBoard {
         } else if (command.length() == 0) {
             if (selX >= 0 && selY >= 0) {
                 if (isOccupied(selY, selX) && occupiedByAlly(selY, selX)) {
-                    if (lockX != -1 && lockY != -1) {
-                        hot.add(new int[] { lockY, lockX });
-                    }
+                    markDirty(lockY, lockX);
 
                     lockX = selX;
                     lockY = selY;
-                    moves = board[selY][selX].getValidMoves(this);
+                    setMoves(board[selY][selX].getValidMoves(this));
 
-                    for (ChessPiece.Move move : moves) {
-                        for (int[] submove : move.submoves) {
-                            hot.add(new int[] { submove[2], submove[3] });
-                        }
-                    }
-
-                    hot.add(new int[] { selY, selX });
+                    markDirty(selY, selX);
                 } else if (lockX != -1 && lockY != -1) {
                     boolean executed = false;
                     for (ChessPiece.Move move : moves) {
-                        if (move.equals(lockY, lockX, selY, selX)) {
+                        if (
+                            move.equals(lockY, lockX, selY, selX) &&
+                            (!PackedMove.isPromotion(move.getPacked()) ||
+                                PackedMove.promotionType(move.getPacked()) ==
+                                promotionType)
+                        ) {
                             move.execute(this);
                             executed = true;
                             break;
@@ -564,33 +709,74 @@ class ChessBoard {
                     }
 
                     if (executed) {
-                        moves.clear();
+                        setMoves(null);
                         lockX = 0;
                         lockY = 0;
-                        colorPlaying = colorPlaying == 0 ? 1 : 0;
-                        moveIdx++;
-
-                        checkInCheck();
-                        if (inCheck) {
-                            int[] kingCoords = findKing();
-                            hot.add(kingCoords);
-                        }
-
-                        if (checkStalemate()) {
-                            endGame(-1);
-                        }
 
-                        if (checkInsufficientMaterial()) {
-                            endGame(-2);
-                        }
-
-                        timer.unpause();
-                        timer.swapActive();
+                        afterMove();
                     }
                 }
             }
+        } else if (command.equalsIgnoreCase("go")) {
+            playEngineMove();
+        } else if (command.length() == 2 && command.charAt(0) == '=') {
+            int type = "nbrq".indexOf(Character.toLowerCase(command.charAt(1)));
+            if (type >= 0) promotionType = Position.KNIGHT + type;
         }
 
         return false;
     }
+
+    // lets the engine pick and play a move for the side to move, thinking on
+    // the same clock a human would
+    private void playEngineMove() {
+        if (tt == null) tt = new TranspositionTable(16);
+
+        SearchResult result = new Search(tt).search(
+            position,
+            timer.searchLimits()
+        );
+        if (result.bestMove == PackedMove.NONE) return;
+
+        markDirty(lockY, lockX);
+        setMoves(null);
+        lockX = lockY = -1;
+
+        makeMove(result.bestMove);
+        afterMove();
+    }
+
+    private void afterMove() {
+        // the king that was in check loses its markers, the one now in
+        // check gains them
+        if (inCheck) dirty |= position.pieces(1 - colorPlaying, Position.KING);
+        checkInCheck();
+        if (inCheck) dirty |= position.pieces(colorPlaying, Position.KING);
+
+        if (checkGameOver()) return;
+
+        timer.unpause();
+        timer.swapActive();
+    }
+
+    /**
+     * Ends the game if the side to move has been mated or any draw rule
+     * applies, and says whether it did. Needs checkInCheck() to be current.
+     */
+    boolean checkGameOver() {
+        if (checkCheckmate()) {
+            endGame(colorPlaying == 0 ? BLACK_WINS : WHITE_WINS);
+        } else if (checkStalemate()) {
+            endGame(STALEMATE);
+        } else if (checkInsufficientMaterial()) {
+            endGame(INSUFFICIENT_MATERIAL);
+        } else if (checkThreefoldRepetition()) {
+            endGame(REPETITION);
+        } else if (checkFiftyMoveRule()) {
+            // checkmate on the hundredth ply still counts, so this comes last
+            endGame(FIFTY_MOVES);
+        }
+
+        return isGameOver();
+    }
 }
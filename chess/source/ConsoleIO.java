@@ -1,6 +1,14 @@
 package source;
 
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Scanner;
 
 class RGB {
@@ -46,30 +54,79 @@ class ColorProfile {
     }
 }
 
+/**
+ * Double-buffered terminal screen. Drawing calls only write the back
+ * buffer; present() compares it with the front buffer (what the terminal
+ * is showing) and sends just the cells that changed, in one write. Runs of
+ * adjacent cells share a single cursor move and cells in the same style
+ * share a single escape.
+ *
+ * A cell is a char plus a packed long style, both kept in flat arrays
+ * indexed row * width + col, so drawing allocates nothing and comparing
+ * two cells is two equality tests. Escapes are only put together when a
+ * frame is sent.
+ *
+ * present() saves and restores the terminal cursor around what it draws,
+ * so the cursor stays wherever mvcur() last put it.
+ *
+ * Nothing is written to the terminal until flush(): every escape and cell
+ * goes into one pending buffer, which is encoded to UTF-8 into a reused
+ * byte buffer and sent with a single write. poll() and endFrame() flush,
+ * so a frame costs one write, and the byte and flush
+ * counters show what each frame actually cost.
+ *
+ * The drawing calls and the style stack aren't synchronized on their own:
+ * a thread drawing from outside the render loop (the clock) holds this
+ * object's lock from its first drawing call to its flush, and the render
+ * loop holds it while it draws each frame.
+ */
 class ConsoleIO {
 
-    private Scanner keyScanner;
+    private static final String RESET = "\033[0m";
 
-    private Cell[][] scrnBuffer;
-    private int width, height;
+    // style bits: foreground RGB, background RGB, then flags. A style with
+    // no COLORED bit uses the terminal's own colors.
+    private static final int FG_SHIFT = 0;
+    private static final int BG_SHIFT = 24;
+    private static final long COLORED = 1L << 48;
+    private static final long BOLD = 1L << 49;
+    private static final long PLAIN = 0L;
+    // matches no real style, so a front cell holding it always gets resent
+    private static final long UNKNOWN = -1L;
 
-    private ArrayList<ColorProfile> colorBuffer;
+    // "0" to "255", so escapes are built without formatting numbers
+    private static final String[] DECIMAL = new String[256];
 
-    private class Cell {
+    static {
+        for (int i = 0; i < DECIMAL.length; ++i) {
+            DECIMAL[i] = Integer.toString(i);
+        }
+    }
 
-        char character;
-        String color;
+    private Scanner keyScanner;
 
-        public Cell(char character, String color) {
-            this.character = character;
-            this.color = color;
-        }
+    // back is drawn into, front is what the terminal currently shows
+    private char[] backChars, frontChars;
+    private long[] backStyles, frontStyles;
+    private int width, height;
 
-        public void set(char character, String color) {
-            this.character = character;
-            this.color = color;
-        }
-    }
+    private ArrayList<ColorProfile> colorBuffer;
+    // the style mvputch draws in: the top of colorBuffer, plus bold
+    private long style = PLAIN;
+    private boolean bold = false;
+
+    // everything not yet sent to the terminal
+    private final StringBuilder pending = new StringBuilder();
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private ByteBuffer bytes = ByteBuffer.allocate(1 << 16);
+    private final FileOutputStream out = new FileOutputStream(
+        FileDescriptor.out
+    );
+
+    private long bytesWritten, flushes;
+    // the frame being drawn, and the last one endFrame() finished
+    private long frameBytes, frameFlushes;
+    private long lastFrameBytes, lastFrameFlushes;
 
     ConsoleIO(int width, int height) {
         keyScanner = new Scanner(System.in);
@@ -77,60 +134,88 @@ class ConsoleIO {
         this.width = width;
         this.height = height;
 
-        this.scrnBuffer = new Cell[height][width];
-        for (int i = 0; i < height; ++i) {
-            for (int j = 0; j < width; ++j) {
-                this.scrnBuffer[i][j] = new Cell(' ', "\033[0m");
-            }
-        }
+        this.backChars = new char[width * height];
+        this.frontChars = new char[width * height];
+        this.backStyles = new long[width * height];
+        this.frontStyles = new long[width * height];
+        Arrays.fill(backChars, ' ');
+        Arrays.fill(frontStyles, UNKNOWN);
 
         redraw(false);
     }
 
     public void destruct() {
+        flush();
         keyScanner.close();
     }
 
+    // ends the frame: shows it, then waits for a line of input
     public String poll() {
-        System.out.print(getColor());
+        endFrame();
 
         String line = keyScanner.nextLine();
 
         return line;
     }
 
-    private String getColor() {
-        if (colorBuffer.size() > 0) {
-            ColorProfile current = colorBuffer.get(colorBuffer.size() - 1);
-            return String.format(
-                "\033[38;2;%d;%d;%dm\033[48;2;%d;%d;%dm",
-                current.r,
-                current.g,
-                current.b,
-                current.br,
-                current.bg,
-                current.bb
-            );
-        }
+    /**
+     * Shows everything drawn since the last frame in one write, and starts
+     * counting the next one. poll() does this itself; it's for input that
+     * doesn't go through poll().
+     */
+    public synchronized void endFrame() {
+        present();
+
+        // typed text is echoed in the current colors
+        appendStyle(pending, style);
+        flush();
+
+        lastFrameBytes = frameBytes;
+        lastFrameFlushes = frameFlushes;
+        frameBytes = frameFlushes = 0;
+    }
+
+    private static long pack(ColorProfile profile) {
+        long fg = (profile.r << 16) | (profile.g << 8) | profile.b;
+        long bg = (profile.br << 16) | (profile.bg << 8) | profile.bb;
+        return COLORED | (fg << FG_SHIFT) | (bg << BG_SHIFT);
+    }
 
-        return "\033[0m";
+    private void updateStyle() {
+        style = colorBuffer.isEmpty()
+            ? PLAIN
+            : pack(colorBuffer.get(colorBuffer.size() - 1));
+        if (bold) style |= BOLD;
+    }
+
+    // the escape that switches the terminal to a style, from scratch
+    private static void appendStyle(StringBuilder sb, long style) {
+        sb.append("\033[0");
+        if ((style & BOLD) != 0) sb.append(";1");
+        if ((style & COLORED) != 0) {
+            sb.append(";38;2");
+            appendRgb(sb, (int) (style >>> FG_SHIFT));
+            sb.append(";48;2");
+            appendRgb(sb, (int) (style >>> BG_SHIFT));
+        }
+        sb.append('m');
     }
 
-    private void drawch(int row, int col, char c, String color, boolean raw) {
-        System.out.printf(
-            "\033[%d;%df%s%c" + (raw ? "\033[0m" : ""),
-            row + 1,
-            col + 1,
-            color,
-            c
-        );
-        System.out.flush();
+    private static void appendRgb(StringBuilder sb, int rgb) {
+        sb
+            .append(';')
+            .append(DECIMAL[(rgb >> 16) & 0xFF])
+            .append(';')
+            .append(DECIMAL[(rgb >> 8) & 0xFF])
+            .append(';')
+            .append(DECIMAL[rgb & 0xFF]);
     }
 
     public void mvputch(int row, int col, char c) {
         if (row >= 0 && row < height && col >= 0 && col < width) {
-            scrnBuffer[row][col].set(c, getColor());
-            drawch(row, col, c, getColor(), false);
+            int index = row * width + col;
+            backChars[index] = c;
+            backStyles[index] = style;
         }
     }
 
@@ -140,19 +225,123 @@ class ConsoleIO {
         }
     }
 
-    public void mvcur(int row, int col) {
-        System.out.printf("\033[%d;%df", row + 1, col + 1);
-        System.out.flush();
-    }
+    /**
+     * Sends every cell that differs between the back and front buffers to
+     * the terminal and flushes once. Called from both the input loop and
+     * the clock thread, hence synchronized, but a caller that drew the
+     * frame holds the lock across the drawing too.
+     */
+    public synchronized void present() {
+        boolean any = false;
+
+        // the cell the terminal cursor is on after the last one we wrote,
+        // and the style it's writing in; -1 and UNKNOWN for not known
+        int next = -1;
+        long current = UNKNOWN;
+
+        for (int index = 0; index < backChars.length; ++index) {
+            char c = backChars[index];
+            long cellStyle = backStyles[index];
+            if (c == frontChars[index] && cellStyle == frontStyles[index]) {
+                continue;
+            }
 
-    public void clearbuf(boolean useColorBuffer) {
-        String color = useColorBuffer ? getColor() : "\033[0m";
-        for (int i = 0; i < height; ++i) {
-            for (int j = 0; j < width; ++j) {
-                this.scrnBuffer[i][j].set(' ', color);
+            if (!any) {
+                pending.append("\033[s");
+                any = true;
             }
+            // a row's last column doesn't carry on into the next row
+            if (index != next || index % width == 0) {
+                pending
+                    .append("\033[")
+                    .append(index / width + 1)
+                    .append(';')
+                    .append(index % width + 1)
+                    .append('f');
+            }
+            if (cellStyle != current) {
+                appendStyle(pending, cellStyle);
+                current = cellStyle;
+            }
+            pending.append(c);
+
+            frontChars[index] = c;
+            frontStyles[index] = cellStyle;
+            next = index + 1;
         }
 
+        if (any) pending.append(RESET).append("\033[u");
+    }
+
+    /**
+     * Sends everything pending to the terminal in one write. Only the end
+     * of a frame and the clock thread call this.
+     */
+    public synchronized void flush() {
+        if (pending.length() == 0) return;
+
+        CharBuffer chars = CharBuffer.wrap(pending);
+        encoder.reset();
+        while (encoder.encode(chars, bytes, true).isOverflow()) {
+            ByteBuffer bigger = ByteBuffer.allocate(bytes.capacity() * 2);
+            bytes.flip();
+            bigger.put(bytes);
+            bytes = bigger;
+        }
+        encoder.flush(bytes);
+
+        int length = bytes.position();
+        try {
+            out.write(bytes.array(), 0, length);
+        } catch (IOException e) {
+            // nowhere left to draw, nothing to be done about it
+        }
+        bytes.clear();
+        pending.setLength(0);
+
+        bytesWritten += length;
+        frameBytes += length;
+        flushes++;
+        frameFlushes++;
+    }
+
+    public synchronized long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public synchronized long getFlushes() {
+        return flushes;
+    }
+
+    // what the last frame took, clock updates included
+    public synchronized long getLastFrameBytes() {
+        return lastFrameBytes;
+    }
+
+    public synchronized long getLastFrameFlushes() {
+        return lastFrameFlushes;
+    }
+
+    // draws whatever is pending, then moves the terminal cursor
+    public synchronized void mvcur(int row, int col) {
+        present();
+        pending
+            .append("\033[")
+            .append(row + 1)
+            .append(';')
+            .append(col + 1)
+            .append('f');
+    }
+
+    // text at the terminal cursor, for things that aren't part of the screen
+    public synchronized void write(String text) {
+        pending.append(text);
+    }
+
+    public void clearbuf(boolean useColorBuffer) {
+        Arrays.fill(backChars, ' ');
+        Arrays.fill(backStyles, useColorBuffer ? style : PLAIN);
+
         redraw();
     }
 
@@ -160,29 +349,19 @@ class ConsoleIO {
         clearbuf(true);
     }
 
-    public void cls() {
-        System.out.print("\033[H\033[2J");
-        System.out.flush();
+    public synchronized void cls() {
+        pending.append("\033[H\033[2J");
     }
 
-    public void redraw(boolean clear) {
+    // forgets what the terminal shows, so the next present() sends it all
+    public synchronized void redraw(boolean clear) {
         if (clear) {
             cls();
         }
 
-        for (int i = 0; i < height; ++i) {
-            System.out.println(getColor());
-
-            for (int j = 0; j < width; ++j) {
-                drawch(
-                    i,
-                    j,
-                    scrnBuffer[i][j].character,
-                    scrnBuffer[i][j].color,
-                    false
-                );
-            }
-        }
+        Arrays.fill(frontStyles, UNKNOWN);
+
+        present();
     }
 
     public void redraw() {
@@ -191,17 +370,22 @@ class ConsoleIO {
 
     public void pushColor(ColorProfile profile) {
         colorBuffer.add(profile);
+        updateStyle();
     }
 
     public void popColor() {
         colorBuffer.remove(colorBuffer.size() - 1);
+        updateStyle();
     }
 
+    // bold and unbold apply to whatever is drawn until they're undone
     public void bold() {
-        System.out.print("\033[1m");
+        bold = true;
+        updateStyle();
     }
 
     public void unbold() {
-        System.out.print("\033[22m");
+        bold = false;
+        updateStyle();
     }
 }
@@ -0,0 +1,262 @@
+package source;
+
+/**
+ * Magic bitboard lookup tables for sliding pieces. The blockers on a
+ * slider's relevant squares are multiplied by a per-square magic number and
+ * the top bits of the product index straight into a table of precomputed
+ * attack sets, so a rook or bishop attack set costs a single load.
+ *
+ * The magics and shifts below were found once, offline, by main(), which
+ * searches with a fixed seed and prints them. Class load only fills the
+ * tables; searching took close to half a second on every start.
+ */
+final class Magic {
+
+    // indexed by square, a8 first
+    private static final long[] ROOK_MAGICS = {
+        0x1080004008801020L, 0x0840092002C03000L, 0x1900200010400900L,
+        0x0880100008000480L, 0x4200100420080200L, 0x8100020100080400L,
+        0x0200040110886200L, 0x0200008040220411L, 0x0404800084400220L,
+        0x0000401000402000L, 0x0086001081220440L, 0x0408800800100280L,
+        0x000A001201040820L, 0x8848800200840080L, 0x4001000100040200L,
+        0x0442000102105084L, 0x9080010020804100L, 0x0040404000201009L,
+        0x0000808010002009L, 0x2200090021D00100L, 0x0008008008040080L,
+        0x0004004002010040L, 0x0011040008015042L, 0x00000A0001768104L,
+        0x0000800080204009L, 0x2010004140002001L, 0x9800200280100080L,
+        0x1000100080080080L, 0x0442000A00049020L, 0x2100040080020080L,
+        0x0800120400900148L, 0x0010040A00128541L, 0x2800804000800030L,
+        0x1010002000400041L, 0x4000200011004100L, 0x0610008410800800L,
+        0x0400802402800800L, 0xC100020080800400L, 0x0002000802000401L,
+        0x0182085882000401L, 0x0220204000808000L, 0x2860100040024022L,
+        0x0001002004110040L, 0x99101042000A0020L, 0x0004080004008080L,
+        0x0010040002008080L, 0x2012004881020004L, 0x8300842444820011L,
+        0x0088403882010200L, 0x0820400080210100L, 0x0110910040A00300L,
+        0x0801100280080480L, 0x0242009008200600L, 0x1002000489500200L,
+        0x0040800200010080L, 0x0091800041000080L, 0x0000209300488001L,
+        0x04C1002414824001L, 0x020020000B001041L, 0x7000100004200901L,
+        0x8002002004100802L, 0x30010002084C0007L, 0x0888221800813004L,
+        0x4000002840840112L,
+    };
+    private static final int[] ROOK_SHIFTS = {
+        52, 53, 53, 53, 53, 53, 53, 52,
+        53, 54, 54, 54, 54, 54, 54, 53,
+        53, 54, 54, 54, 54, 54, 54, 53,
+        53, 54, 54, 54, 54, 54, 54, 53,
+        53, 54, 54, 54, 54, 54, 54, 53,
+        53, 54, 54, 54, 54, 54, 54, 53,
+        53, 54, 54, 54, 54, 54, 54, 53,
+        52, 53, 53, 53, 53, 53, 53, 52,
+    };
+
+    private static final long[] BISHOP_MAGICS = {
+        0xA010041108003100L, 0x006082020A002900L, 0x6810010619200000L,
+        0x08281A0520000408L, 0x0001104001000400L, 0x0018901008048400L,
+        0x00040A0210245280L, 0x000200210808A402L, 0x9140048410821200L,
+        0x0800091010820041L, 0x20504804832202C0L, 0x0100091401081000L,
+        0x8021011140000012L, 0x0810020804450400L, 0x208B0542109008A2L,
+        0x0080084A08040204L, 0x0040E2A80811244CL, 0x2505022008008108L,
+        0x0430220100420040L, 0x010A040420220040L, 0x1105000290400000L,
+        0x0093001200822120L, 0x4000A62048043004L, 0x280120048A015004L,
+        0x006090002A020814L, 0x44042000240800D0L, 0x01102800040A4400L,
+        0x1004080080220040L, 0x0001001011004024L, 0x0010044000805040L,
+        0x0914041200820100L, 0x0004821012821480L, 0x0024040500C05021L,
+        0x0088611002080200L, 0x0116080A00040020L, 0x4000020080080080L,
+        0x2450450140840040L, 0x0000880201484100L, 0x0222020404020092L,
+        0x8081110600002E00L, 0x2842101105000801L, 0x1100809008001025L,
+        0x00020202221C0400L, 0x0422014022009020L, 0x0210046102100C00L,
+        0xC004008082029102L, 0x00AA461801101200L, 0x0404080080201108L,
+        0x020542108C205002L, 0x0410544804100100L, 0x0040910841100000L,
+        0x0400200042021100L, 0x00004204850400C0L, 0x0200100410A42102L,
+        0x1040020801210102L, 0x0805040410420000L, 0x2884804130100200L,
+        0x800C262201242000L, 0x1058000194108800L, 0x0014221054420204L,
+        0x0104000012A02200L, 0x0200881003300100L, 0x0140400202840100L,
+        0x0402020801010201L,
+    };
+    private static final int[] BISHOP_SHIFTS = {
+        58, 59, 59, 59, 59, 59, 59, 58,
+        59, 59, 59, 59, 59, 59, 59, 59,
+        59, 59, 57, 57, 57, 57, 59, 59,
+        59, 59, 57, 55, 55, 57, 59, 59,
+        59, 59, 57, 55, 55, 57, 59, 59,
+        59, 59, 57, 57, 57, 57, 59, 59,
+        59, 59, 59, 59, 59, 59, 59, 59,
+        58, 59, 59, 59, 59, 59, 59, 58,
+    };
+
+    private static final long[] ROOK_MASKS = new long[64];
+    private static final int[] ROOK_OFFSETS = new int[64];
+    private static final long[] ROOK_TABLE;
+
+    private static final long[] BISHOP_MASKS = new long[64];
+    private static final int[] BISHOP_OFFSETS = new int[64];
+    private static final long[] BISHOP_TABLE;
+
+    // only used by main() to search for new magics
+    private static long seed = 0x9E3779B97F4A7C15L;
+
+    static {
+        ROOK_TABLE = initTables(
+            Bitboard.ROOK_DIRECTIONS,
+            ROOK_MASKS,
+            ROOK_MAGICS,
+            ROOK_SHIFTS,
+            ROOK_OFFSETS
+        );
+        BISHOP_TABLE = initTables(
+            Bitboard.BISHOP_DIRECTIONS,
+            BISHOP_MASKS,
+            BISHOP_MAGICS,
+            BISHOP_SHIFTS,
+            BISHOP_OFFSETS
+        );
+    }
+
+    private Magic() {}
+
+    static long rookAttacks(int square, long occupied) {
+        long blockers = occupied & ROOK_MASKS[square];
+        int idx = (int) ((blockers * ROOK_MAGICS[square]) >>> ROOK_SHIFTS[square]);
+        return ROOK_TABLE[ROOK_OFFSETS[square] + idx];
+    }
+
+    static long bishopAttacks(int square, long occupied) {
+        long blockers = occupied & BISHOP_MASKS[square];
+        int idx = (int) ((blockers * BISHOP_MAGICS[square]) >>>
+            BISHOP_SHIFTS[square]);
+        return BISHOP_TABLE[BISHOP_OFFSETS[square] + idx];
+    }
+
+    /**
+     * Searches for a fresh set of magics and prints them in the form used
+     * above, for when the masks or the table layout change.
+     *
+     * Usage: java -cp bin source.Magic
+     */
+    public static void main(String[] args) {
+        print("ROOK", Bitboard.ROOK_DIRECTIONS);
+        print("BISHOP", Bitboard.BISHOP_DIRECTIONS);
+    }
+
+    private static void print(String name, int[][] directions) {
+        StringBuilder magics = new StringBuilder();
+        StringBuilder shifts = new StringBuilder();
+
+        for (int sq = 0; sq < 64; ++sq) {
+            long mask = relevantMask(sq, directions);
+            int bits = Long.bitCount(mask);
+            long magic = findMagic(sq, directions, mask);
+
+            magics.append(sq % 3 == 0 ? "\n        " : " ");
+            magics.append(String.format("0x%016XL,", magic));
+            shifts.append(sq % 8 == 0 ? "\n        " : " ");
+            shifts.append(64 - bits).append(',');
+        }
+
+        System.out.println(name + "_MAGICS = {" + magics + "\n};");
+        System.out.println(name + "_SHIFTS = {" + shifts + "\n};");
+    }
+
+    private static long[] initTables(
+        int[][] directions,
+        long[] masks,
+        long[] magics,
+        int[] shifts,
+        int[] offsets
+    ) {
+        int size = 0;
+        for (int sq = 0; sq < 64; ++sq) {
+            masks[sq] = relevantMask(sq, directions);
+            offsets[sq] = size;
+            size += 1 << (64 - shifts[sq]);
+        }
+
+        long[] table = new long[size];
+        for (int sq = 0; sq < 64; ++sq) {
+            long mask = masks[sq];
+
+            // every subset of the mask (carry-rippler). A slider always
+            // attacks something, so 0 marks a slot that's still empty.
+            long subset = 0L;
+            do {
+                long attacks = Bitboard.slidingAttacks(sq, subset, directions);
+                int idx =
+                    offsets[sq] + (int) ((subset * magics[sq]) >>> shifts[sq]);
+
+                if (table[idx] != 0 && table[idx] != attacks) {
+                    throw new IllegalStateException("bad magic for " + sq);
+                }
+                table[idx] = attacks;
+
+                subset = (subset - mask) & mask;
+            } while (subset != 0);
+        }
+
+        return table;
+    }
+
+    // every square a slider could be blocked on, which leaves out the last
+    // square of each ray since a piece there never changes the attack set
+    private static long relevantMask(int square, int[][] directions) {
+        long mask = 0L;
+
+        for (int[] dir : directions) {
+            int rank = Bitboard.rankOf(square) + dir[0];
+            int file = Bitboard.fileOf(square) + dir[1];
+
+            while (Bitboard.inBounds(rank + dir[0], file + dir[1])) {
+                mask |= Bitboard.bit(Bitboard.square(rank, file));
+                rank += dir[0];
+                file += dir[1];
+            }
+        }
+
+        return mask;
+    }
+
+    private static long findMagic(int square, int[][] directions, long mask) {
+        int bits = Long.bitCount(mask);
+        int count = 1 << bits;
+        long[] table = new long[count];
+
+        long[] occupancies = new long[count];
+        long[] attacks = new long[count];
+        int[] epochs = new int[count];
+
+        // enumerate every subset of the mask (carry-rippler)
+        long subset = 0L;
+        for (int i = 0; i < count; ++i) {
+            occupancies[i] = subset;
+            attacks[i] = Bitboard.slidingAttacks(square, subset, directions);
+            subset = (subset - mask) & mask;
+        }
+
+        for (int epoch = 1;; ++epoch) {
+            long magic = nextRandom() & nextRandom() & nextRandom();
+            if (Long.bitCount((mask * magic) & 0xFF00000000000000L) < 6) {
+                continue;
+            }
+
+            boolean ok = true;
+            for (int i = 0; i < count && ok; ++i) {
+                int idx = (int) ((occupancies[i] * magic) >>> (64 - bits));
+
+                if (epochs[idx] != epoch) {
+                    epochs[idx] = epoch;
+                    table[idx] = attacks[i];
+                } else if (table[idx] != attacks[i]) {
+                    ok = false;
+                }
+            }
+
+            if (ok) return magic;
+        }
+    }
+
+    private static long nextRandom() {
+        // xorshift64*
+        seed ^= seed >>> 12;
+        seed ^= seed << 25;
+        seed ^= seed >>> 27;
+        return seed * 0x2545F4914F6CDD1DL;
+    }
+}
@@ -0,0 +1,19 @@
+package source;
+
+/**
+ * Preallocated move storage, one int[] per search ply. Generators write
+ * packed moves into the array for their ply and return the count, so
+ * nothing is allocated while walking the tree.
+ */
+public final class MoveBuffer {
+
+    public static final int MAX_PLY = 128;
+    // the most moves any legal chess position has is 218
+    public static final int MAX_MOVES = 256;
+
+    private final int[][] plies = new int[MAX_PLY][MAX_MOVES];
+
+    public int[] get(int ply) {
+        return plies[ply];
+    }
+}
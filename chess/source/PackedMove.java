@@ -0,0 +1,111 @@
+package source;
+
+/**
+ * Moves packed into a single int so generators can write them into plain
+ * int[] buffers instead of allocating objects.
+ *
+ * <pre>
+ *  bits  0-5   from square
+ *  bits  6-11  to square
+ *  bits 12-15  flags
+ *  bits 16-18  moving piece type
+ *  bits 19-21  captured piece type + 1 (0 when nothing is captured)
+ * </pre>
+ *
+ * The flags follow the usual 4-bit layout: bit 2 marks a capture and bit 3 a
+ * promotion, with the low two bits picking the promotion piece.
+ */
+public final class PackedMove {
+
+    public static final int NONE = 0;
+
+    public static final int QUIET = 0;
+    public static final int DOUBLE_PUSH = 1;
+    public static final int KING_CASTLE = 2;
+    public static final int QUEEN_CASTLE = 3;
+    public static final int CAPTURE = 4;
+    public static final int EP_CAPTURE = 5;
+    public static final int PROMO_KNIGHT = 8;
+    public static final int PROMO_BISHOP = 9;
+    public static final int PROMO_ROOK = 10;
+    public static final int PROMO_QUEEN = 11;
+    public static final int PROMO_KNIGHT_CAPTURE = 12;
+    public static final int PROMO_BISHOP_CAPTURE = 13;
+    public static final int PROMO_ROOK_CAPTURE = 14;
+    public static final int PROMO_QUEEN_CAPTURE = 15;
+
+    private PackedMove() {}
+
+    public static int encode(
+        int from,
+        int to,
+        int flags,
+        int piece,
+        int captured
+    ) {
+        return (
+            from |
+            (to << 6) |
+            (flags << 12) |
+            (piece << 16) |
+            ((captured + 1) << 19)
+        );
+    }
+
+    public static int from(int move) {
+        return move & 0x3F;
+    }
+
+    public static int to(int move) {
+        return (move >>> 6) & 0x3F;
+    }
+
+    public static int flags(int move) {
+        return (move >>> 12) & 0xF;
+    }
+
+    public static int piece(int move) {
+        return (move >>> 16) & 0x7;
+    }
+
+    // Position.EMPTY when the move is not a capture
+    public static int captured(int move) {
+        return ((move >>> 19) & 0x7) - 1;
+    }
+
+    public static boolean isCapture(int move) {
+        return (flags(move) & CAPTURE) != 0;
+    }
+
+    public static boolean isPromotion(int move) {
+        return (flags(move) & 8) != 0;
+    }
+
+    public static int promotionType(int move) {
+        return (flags(move) & 3) + Position.KNIGHT;
+    }
+
+    public static boolean isCastle(int move) {
+        int flags = flags(move);
+        return flags == KING_CASTLE || flags == QUEEN_CASTLE;
+    }
+
+    // coordinate notation, e.g. "e2e4" or "e7e8q"
+    public static String toString(int move) {
+        String s = squareName(from(move)) + squareName(to(move));
+
+        if (isPromotion(move)) {
+            s += "nbrq".charAt(promotionType(move) - Position.KNIGHT);
+        }
+
+        return s;
+    }
+
+    public static String squareName(int square) {
+        return (
+            "" +
+            (char) ('a' + Bitboard.fileOf(square)) +
+            (8 - Bitboard.rankOf(square))
+        );
+    }
+}
@@ -0,0 +1,100 @@
+package source;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * Counts the leaf nodes of the legal move tree to a fixed depth. The totals
+ * for standard positions are well known, so this is the correctness check
+ * for the move generator and make/unmake.
+ *
+ * Usage: java -cp bin source.Perft depth [divide] [fen]
+ */
+public class Perft {
+
+    private final Position position;
+    private final MoveBuffer buffer = new MoveBuffer();
+
+    public Perft(Position position) {
+        this.position = position;
+    }
+
+    public long perft(int depth) {
+        return perft(depth, 0);
+    }
+
+    private long perft(int depth, int ply) {
+        int[] moves = buffer.get(ply);
+        int count = position.generateLegalMoves(moves, 0, -1L);
+
+        // bulk count, the last ply doesn't need to be played out
+        if (depth <= 1) return depth == 1 ? count : 1;
+
+        long nodes = 0;
+        for (int i = 0; i < count; ++i) {
+            position.makeMove(moves[i]);
+            nodes += perft(depth - 1, ply + 1);
+            position.unmakeMove(moves[i]);
+        }
+
+        return nodes;
+    }
+
+    // perft split by root move, for narrowing down where counts diverge
+    public long divide(int depth, PrintStream out) {
+        int[] moves = buffer.get(0);
+        int count = position.generateLegalMoves(moves, 0, -1L);
+
+        long total = 0;
+        for (int i = 0; i < count; ++i) {
+            position.makeMove(moves[i]);
+            long nodes = perft(depth - 1, 1);
+            position.unmakeMove(moves[i]);
+
+            out.println(PackedMove.toString(moves[i]) + ": " + nodes);
+            total += nodes;
+        }
+
+        out.println();
+        out.println("Moves: " + count);
+        out.println("Nodes: " + total);
+
+        return total;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("usage: Perft depth [divide] [fen]");
+            return;
+        }
+
+        int depth = Integer.parseInt(args[0]);
+        boolean divide = args.length > 1 && args[1].equalsIgnoreCase("divide");
+
+        int fenStart = divide ? 2 : 1;
+        String[] fen = Arrays.copyOfRange(args, fenStart, args.length);
+        Position position = fen.length > 0
+            ? Position.fromFen(String.join(" ", fen))
+            : Position.startPosition();
+
+        Perft perft = new Perft(position);
+
+        long start = System.nanoTime();
+        long nodes = divide
+            ? perft.divide(depth, System.out)
+            : perft.perft(depth);
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println(
+            "perft(" +
+            depth +
+            ") = " +
+            nodes +
+            " in " +
+            (elapsed / 1000000) +
+            " ms (" +
+            (nodes * 1000000000L / Math.max(elapsed, 1)) +
+            " nps)"
+        );
+    }
+}
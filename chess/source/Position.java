@@ -0,0 +1,1196 @@
+package source;
+
+import java.util.Arrays;
+
+/**
+ * Bitboard representation of a chess position. There is one bitboard per
+ * piece type and color plus per-color and total occupancy masks, and a small
+ * mailbox so the piece on a square can be read without scanning bitboards.
+ *
+ * The whole thing is a handful of primitive arrays, so copying it is cheap.
+ */
+public class Position {
+
+    public static final int WHITE = 0;
+    public static final int BLACK = 1;
+
+    public static final int PAWN = 0;
+    public static final int KNIGHT = 1;
+    public static final int BISHOP = 2;
+    public static final int ROOK = 3;
+    public static final int QUEEN = 4;
+    public static final int KING = 5;
+    public static final int EMPTY = -1;
+
+    // which moves generateLegalMoves writes, combined as bits. promotions to
+    // a queen count as captures, since they win about as much material
+    public static final int GEN_CAPTURES = 1;
+    public static final int GEN_QUIETS = 2;
+    public static final int GEN_ALL = GEN_CAPTURES | GEN_QUIETS;
+
+    public static final String START_FEN =
+        "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    // FEN letters indexed by piece type
+    private static final String FEN_PIECES = "pnbrqk";
+
+    public static final int WHITE_KINGSIDE = 1;
+    public static final int WHITE_QUEENSIDE = 2;
+    public static final int BLACK_KINGSIDE = 4;
+    public static final int BLACK_QUEENSIDE = 8;
+
+    // rights that survive a move touching each square, so moving a king or
+    // rook (or capturing a rook) clears the matching castling rights
+    private static final int[] CASTLING_MASK = new int[64];
+
+    private static final long PROMOTION_RANKS =
+        Bitboard.RANK_8 | Bitboard.RANK_1;
+    private static final int[] KING_HOME = { 60, 4 };
+
+    static {
+        Arrays.fill(CASTLING_MASK, 15);
+        CASTLING_MASK[Bitboard.square(7, 4)] &= ~(WHITE_KINGSIDE |
+            WHITE_QUEENSIDE);
+        CASTLING_MASK[Bitboard.square(7, 7)] &= ~WHITE_KINGSIDE;
+        CASTLING_MASK[Bitboard.square(7, 0)] &= ~WHITE_QUEENSIDE;
+        CASTLING_MASK[Bitboard.square(0, 4)] &= ~(BLACK_KINGSIDE |
+            BLACK_QUEENSIDE);
+        CASTLING_MASK[Bitboard.square(0, 7)] &= ~BLACK_KINGSIDE;
+        CASTLING_MASK[Bitboard.square(0, 0)] &= ~BLACK_QUEENSIDE;
+    }
+
+    // indexed [color][piece type]
+    final long[][] pieces = new long[2][6];
+    final long[] colors = new long[2];
+    long occupied = 0L;
+
+    // piece type on each square, EMPTY if nothing is there
+    final int[] mailbox = new int[64];
+    // kept up to date by put(), so it follows the king through make/unmake
+    final int[] kingSquare = new int[2];
+
+    int sideToMove = WHITE;
+    int epSquare = -1;
+    int castling = 0;
+    // plies since the last capture or pawn move
+    int halfmoveClock = 0;
+    int fullmoveNumber = 1;
+
+    // Zobrist key, XORed in step with every change made to the position
+    long hash = 0L;
+    // the same, but only over the pawns, for caching pawn structure
+    long pawnHash = 0L;
+
+    // running EvalWeights totals from white's side, kept up by put/remove
+    int mgScore = 0;
+    int egScore = 0;
+    int phase = 0;
+
+    // state makeMove can't recover from the move itself, one entry per ply
+    private int[] undoEp = new int[256];
+    private int[] undoCastling = new int[256];
+    private int[] undoHalfmove = new int[256];
+    private int undoCount = 0;
+
+    // hashes of the positions before each move, indexed by ply & HISTORY_MASK.
+    // a repetition can't reach back past a capture or pawn move, and the
+    // fifty move rule ends the game before 100 of those, so the ring never
+    // needs to look further back than it holds
+    private static final int HISTORY_SIZE = 128;
+    private static final int HISTORY_MASK = HISTORY_SIZE - 1;
+    private final long[] hashHistory = new long[HISTORY_SIZE];
+    // plies played since the position was set up
+    private int gamePly = 0;
+
+    public Position() {
+        Arrays.fill(mailbox, EMPTY);
+    }
+
+    public Position(Position other) {
+        for (int color = 0; color < 2; ++color) {
+            System.arraycopy(other.pieces[color], 0, pieces[color], 0, 6);
+        }
+        System.arraycopy(other.colors, 0, colors, 0, 2);
+        System.arraycopy(other.mailbox, 0, mailbox, 0, 64);
+        System.arraycopy(other.kingSquare, 0, kingSquare, 0, 2);
+        System.arraycopy(other.hashHistory, 0, hashHistory, 0, HISTORY_SIZE);
+
+        this.occupied = other.occupied;
+        this.sideToMove = other.sideToMove;
+        this.epSquare = other.epSquare;
+        this.castling = other.castling;
+        this.halfmoveClock = other.halfmoveClock;
+        this.fullmoveNumber = other.fullmoveNumber;
+        this.hash = other.hash;
+        this.pawnHash = other.pawnHash;
+        this.mgScore = other.mgScore;
+        this.egScore = other.egScore;
+        this.phase = other.phase;
+        this.gamePly = other.gamePly;
+    }
+
+    public Position copy() {
+        return new Position(this);
+    }
+
+    public static Position startPosition() {
+        return fromFen(START_FEN);
+    }
+
+    public static Position fromFen(String fen) {
+        Position position = new Position();
+        position.setFen(fen);
+        return position;
+    }
+
+    /**
+     * Replaces this position with the one described by fen. The string is
+     * walked character by character with no splitting or substrings, so a
+     * Position can be reused to parse a large EPD file without garbage. The
+     * halfmove and fullmove fields are optional, as they are in EPD.
+     *
+     * Everything is checked before the board is touched, so a bad FEN
+     * throws IllegalArgumentException and leaves this position as it was.
+     */
+    public void setFen(String fen) {
+        int i = skipSpaces(fen, checkPlacement(fen));
+        int len = fen.length();
+
+        int side = i < len && fen.charAt(i) == 'b' ? BLACK : WHITE;
+        i = skipSpaces(fen, i + 1);
+
+        int rights = 0;
+        for (; i < len && fen.charAt(i) != ' '; ++i) {
+            switch (fen.charAt(i)) {
+                case 'K':
+                    rights |= WHITE_KINGSIDE;
+                    break;
+                case 'Q':
+                    rights |= WHITE_QUEENSIDE;
+                    break;
+                case 'k':
+                    rights |= BLACK_KINGSIDE;
+                    break;
+                case 'q':
+                    rights |= BLACK_QUEENSIDE;
+                    break;
+            }
+        }
+        i = skipSpaces(fen, i);
+
+        int ep = -1;
+        if (i < len && fen.charAt(i) != '-') {
+            ep = parseEpSquare(fen, i, side);
+            i += 2;
+        } else {
+            i++;
+        }
+        i = skipSpaces(fen, i);
+
+        int halfmoves = 0;
+        for (; i < len && Character.isDigit(fen.charAt(i)); ++i) {
+            halfmoves = halfmoves * 10 + (fen.charAt(i) - '0');
+        }
+        i = skipSpaces(fen, i);
+
+        int fullmoves = 0;
+        for (; i < len && Character.isDigit(fen.charAt(i)); ++i) {
+            fullmoves = fullmoves * 10 + (fen.charAt(i) - '0');
+        }
+
+        for (int color = 0; color < 2; ++color) {
+            Arrays.fill(pieces[color], 0L);
+        }
+        colors[WHITE] = colors[BLACK] = occupied = 0L;
+        Arrays.fill(mailbox, EMPTY);
+        undoCount = 0;
+        gamePly = 0;
+        hash = pawnHash = 0L;
+        mgScore = egScore = phase = 0;
+
+        int rank = 0, file = 0;
+        for (i = 0; i < len && fen.charAt(i) != ' '; ++i) {
+            char c = fen.charAt(i);
+
+            if (c == '/') {
+                rank++;
+                file = 0;
+            } else if (c >= '1' && c <= '8') {
+                file += c - '0';
+            } else {
+                int type = FEN_PIECES.indexOf(Character.toLowerCase(c));
+                int color = Character.isUpperCase(c) ? WHITE : BLACK;
+                put(Bitboard.square(rank, file), color, type);
+                file++;
+            }
+        }
+
+        sideToMove = side;
+        castling = rights;
+        epSquare = ep;
+        halfmoveClock = halfmoves;
+        fullmoveNumber = fullmoves == 0 ? 1 : fullmoves;
+
+        // same rule as makeMove, see the comment there
+        if (
+            epSquare >= 0 &&
+            (Bitboard.PAWN_ATTACKS[1 - sideToMove][epSquare] &
+                pieces[sideToMove][PAWN]) ==
+            0
+        ) {
+            epSquare = -1;
+        }
+
+        // put() has already hashed the pieces
+        hash ^= stateKey();
+    }
+
+    // checks the piece placement field, returning where it ends
+    private static int checkPlacement(String fen) {
+        int whiteKings = 0, blackKings = 0;
+        int rank = 0, file = 0;
+
+        int i = 0;
+        for (; i < fen.length() && fen.charAt(i) != ' '; ++i) {
+            char c = fen.charAt(i);
+
+            if (c == '/') {
+                rank++;
+                file = 0;
+            } else if (c >= '1' && c <= '8') {
+                file += c - '0';
+            } else {
+                int type = FEN_PIECES.indexOf(Character.toLowerCase(c));
+                if (type < 0 || rank > 7 || file > 7) {
+                    throw new IllegalArgumentException("Bad FEN: " + fen);
+                }
+
+                if (c == 'K') whiteKings++;
+                if (c == 'k') blackKings++;
+                file++;
+            }
+        }
+
+        if (whiteKings != 1 || blackKings != 1) {
+            throw new IllegalArgumentException("Bad FEN: " + fen);
+        }
+
+        return i;
+    }
+
+    /**
+     * The en passant square at fen[i], which has to be one a pawn of the
+     * side that isn't to move has just skipped over: on the third or sixth
+     * rank as appropriate, empty, with that pawn in front of it and nothing
+     * on the square it came from.
+     */
+    private static int parseEpSquare(String fen, int i, int side) {
+        if (i + 1 >= fen.length()) {
+            throw new IllegalArgumentException("Bad FEN: " + fen);
+        }
+
+        int file = fen.charAt(i) - 'a';
+        char rankChar = fen.charAt(i + 1);
+        if (file < 0 || file > 7 || rankChar != (side == WHITE ? '6' : '3')) {
+            throw new IllegalArgumentException("Bad FEN: " + fen);
+        }
+
+        int square = Bitboard.square('8' - rankChar, file);
+        // white moves towards lower squares, so black's pawn sits below
+        int pawn = side == WHITE ? square + 8 : square - 8;
+        int start = side == WHITE ? square - 8 : square + 8;
+
+        if (
+            fenPieceAt(fen, square) != ' ' ||
+            fenPieceAt(fen, start) != ' ' ||
+            fenPieceAt(fen, pawn) != (side == WHITE ? 'p' : 'P')
+        ) {
+            throw new IllegalArgumentException("Bad FEN: " + fen);
+        }
+
+        return square;
+    }
+
+    // the FEN letter on square, or a space if it's empty
+    private static char fenPieceAt(String fen, int square) {
+        int rank = 0, file = 0;
+
+        for (int i = 0; i < fen.length() && fen.charAt(i) != ' '; ++i) {
+            char c = fen.charAt(i);
+
+            if (c == '/') {
+                rank++;
+                file = 0;
+            } else if (c >= '1' && c <= '8') {
+                file += c - '0';
+            } else {
+                if (Bitboard.square(rank, file) == square) return c;
+                file++;
+            }
+        }
+
+        return ' ';
+    }
+
+    // the part of the hash that isn't piece placement
+    private long stateKey() {
+        long key = Zobrist.CASTLING[castling];
+        if (epSquare >= 0) key ^= Zobrist.EP_FILE[Bitboard.fileOf(epSquare)];
+        if (sideToMove == BLACK) key ^= Zobrist.SIDE;
+        return key;
+    }
+
+    // the hash rebuilt from scratch, for checking the incremental one
+    public long computeHash() {
+        long key = stateKey();
+
+        for (int sq = 0; sq < 64; ++sq) {
+            if (mailbox[sq] != EMPTY) {
+                key ^= Zobrist.PIECES[colorAt(sq)][mailbox[sq]][sq];
+            }
+        }
+
+        return key;
+    }
+
+    public long getHash() {
+        return hash;
+    }
+
+    public long getPawnHash() {
+        return pawnHash;
+    }
+
+    /**
+     * Recomputes the evaluation totals from the board, for after the
+     * weights have been reloaded (or for checking the incremental ones).
+     */
+    public void refreshEval() {
+        mgScore = egScore = phase = 0;
+
+        for (int sq = 0; sq < 64; ++sq) {
+            int type = mailbox[sq];
+            if (type == EMPTY) continue;
+
+            int color = colorAt(sq);
+            mgScore += EvalWeights.MG[color][type][sq];
+            egScore += EvalWeights.EG[color][type][sq];
+            phase += EvalWeights.PHASE[type];
+        }
+    }
+
+    // material plus square bonuses from white's side, middlegame weights
+    public int getMiddlegameScore() {
+        return mgScore;
+    }
+
+    public int getEndgameScore() {
+        return egScore;
+    }
+
+    // EvalWeights.maxPhase() with everything on the board, 0 with only kings
+    // and pawns (under the default weights)
+    public int getPhase() {
+        return phase;
+    }
+
+    public String toFen() {
+        StringBuilder sb = new StringBuilder(90);
+
+        for (int rank = 0; rank < 8; ++rank) {
+            int empty = 0;
+
+            for (int file = 0; file < 8; ++file) {
+                int sq = Bitboard.square(rank, file);
+                if (mailbox[sq] == EMPTY) {
+                    empty++;
+                    continue;
+                }
+
+                if (empty > 0) sb.append(empty);
+                empty = 0;
+
+                char c = FEN_PIECES.charAt(mailbox[sq]);
+                sb.append(colorAt(sq) == WHITE ? Character.toUpperCase(c) : c);
+            }
+
+            if (empty > 0) sb.append(empty);
+            if (rank < 7) sb.append('/');
+        }
+
+        sb.append(sideToMove == WHITE ? " w " : " b ");
+
+        if (castling == 0) sb.append('-');
+        if ((castling & WHITE_KINGSIDE) != 0) sb.append('K');
+        if ((castling & WHITE_QUEENSIDE) != 0) sb.append('Q');
+        if ((castling & BLACK_KINGSIDE) != 0) sb.append('k');
+        if ((castling & BLACK_QUEENSIDE) != 0) sb.append('q');
+
+        sb.append(' ');
+        sb.append(epSquare < 0 ? "-" : PackedMove.squareName(epSquare));
+        sb.append(' ').append(halfmoveClock);
+        sb.append(' ').append(fullmoveNumber);
+
+        return sb.toString();
+    }
+
+    private static int skipSpaces(String s, int i) {
+        while (i < s.length() && s.charAt(i) == ' ') i++;
+        return i;
+    }
+
+    public void put(int square, int color, int type) {
+        long b = Bitboard.bit(square);
+
+        pieces[color][type] |= b;
+        colors[color] |= b;
+        occupied |= b;
+        mailbox[square] = type;
+        hash ^= Zobrist.PIECES[color][type][square];
+        if (type == PAWN) pawnHash ^= Zobrist.PIECES[color][PAWN][square];
+        mgScore += EvalWeights.MG[color][type][square];
+        egScore += EvalWeights.EG[color][type][square];
+        phase += EvalWeights.PHASE[type];
+
+        if (type == KING) kingSquare[color] = square;
+    }
+
+    public void remove(int square) {
+        int type = mailbox[square];
+        if (type == EMPTY) return;
+
+        long b = Bitboard.bit(square);
+        int color = (colors[WHITE] & b) != 0 ? WHITE : BLACK;
+
+        pieces[color][type] &= ~b;
+        colors[color] &= ~b;
+        occupied &= ~b;
+        mailbox[square] = EMPTY;
+        hash ^= Zobrist.PIECES[color][type][square];
+        if (type == PAWN) pawnHash ^= Zobrist.PIECES[color][PAWN][square];
+        mgScore -= EvalWeights.MG[color][type][square];
+        egScore -= EvalWeights.EG[color][type][square];
+        phase -= EvalWeights.PHASE[type];
+    }
+
+    // moves whatever is on from to to, capturing anything already on to
+    public void movePiece(int from, int to) {
+        int type = mailbox[from];
+        int color = colorAt(from);
+
+        remove(to);
+        remove(from);
+        put(to, color, type);
+    }
+
+    public int pieceAt(int square) {
+        return mailbox[square];
+    }
+
+    public int colorAt(int square) {
+        long b = Bitboard.bit(square);
+        if ((colors[WHITE] & b) != 0) return WHITE;
+        if ((colors[BLACK] & b) != 0) return BLACK;
+        return EMPTY;
+    }
+
+    public int kingSquare(int color) {
+        return kingSquare[color];
+    }
+
+    public long pieces(int color, int type) {
+        return pieces[color][type];
+    }
+
+    public long colorOccupancy(int color) {
+        return colors[color];
+    }
+
+    public long occupied() {
+        return occupied;
+    }
+
+    public int getSideToMove() {
+        return sideToMove;
+    }
+
+    public int getEpSquare() {
+        return epSquare;
+    }
+
+    public int getCastling() {
+        return castling;
+    }
+
+    public int getHalfmoveClock() {
+        return halfmoveClock;
+    }
+
+    public int getFullmoveNumber() {
+        return fullmoveNumber;
+    }
+
+    // bitboard of every square a piece of the given type and color on square
+    // can move to, ignoring whether the move would leave the king in check
+    public long attacks(int square, int color, int type) {
+        switch (type) {
+            case PAWN:
+                return Bitboard.PAWN_ATTACKS[color][square];
+            case KNIGHT:
+                return Bitboard.KNIGHT_ATTACKS[square];
+            case BISHOP:
+                return Bitboard.bishopAttacks(square, occupied);
+            case ROOK:
+                return Bitboard.rookAttacks(square, occupied);
+            case QUEEN:
+                return Bitboard.queenAttacks(square, occupied);
+            case KING:
+                return Bitboard.KING_ATTACKS[square];
+            default:
+                return 0L;
+        }
+    }
+
+    /**
+     * Works backwards from square: a piece of byColor attacks it exactly when
+     * the same kind of piece standing on square would attack that piece.
+     */
+    public boolean isSquareAttacked(int square, int byColor) {
+        long[] their = pieces[byColor];
+
+        return (
+            (Bitboard.PAWN_ATTACKS[1 - byColor][square] & their[PAWN]) != 0 ||
+            (Bitboard.KNIGHT_ATTACKS[square] & their[KNIGHT]) != 0 ||
+            (Bitboard.KING_ATTACKS[square] & their[KING]) != 0 ||
+            (Bitboard.bishopAttacks(square, occupied) &
+                    (their[BISHOP] | their[QUEEN])) !=
+                0 ||
+            (Bitboard.rookAttacks(square, occupied) &
+                    (their[ROOK] | their[QUEEN])) !=
+                0
+        );
+    }
+
+    // the legal move written as e.g. "e2e4" or "e7e8q", or PackedMove.NONE
+    public int findMove(String text) {
+        int[] buf = new int[MoveBuffer.MAX_MOVES];
+        int count = generateLegalMoves(buf, 0, -1L);
+
+        for (int i = 0; i < count; ++i) {
+            if (PackedMove.toString(buf[i]).equals(text)) return buf[i];
+        }
+
+        return PackedMove.NONE;
+    }
+
+    public boolean isInCheck() {
+        return isSquareAttacked(kingSquare[sideToMove], 1 - sideToMove);
+    }
+
+    // every piece of either color attacking square, given the occupancy
+    public long attackersTo(int square, long occupied) {
+        long bishopsQueens =
+            pieces[WHITE][BISHOP] |
+            pieces[BLACK][BISHOP] |
+            pieces[WHITE][QUEEN] |
+            pieces[BLACK][QUEEN];
+        long rooksQueens =
+            pieces[WHITE][ROOK] |
+            pieces[BLACK][ROOK] |
+            pieces[WHITE][QUEEN] |
+            pieces[BLACK][QUEEN];
+
+        return (
+            (Bitboard.PAWN_ATTACKS[WHITE][square] & pieces[BLACK][PAWN]) |
+            (Bitboard.PAWN_ATTACKS[BLACK][square] & pieces[WHITE][PAWN]) |
+            (Bitboard.KNIGHT_ATTACKS[square] &
+                (pieces[WHITE][KNIGHT] | pieces[BLACK][KNIGHT])) |
+            (Bitboard.KING_ATTACKS[square] &
+                (pieces[WHITE][KING] | pieces[BLACK][KING])) |
+            (Bitboard.bishopAttacks(square, occupied) & bishopsQueens) |
+            (Bitboard.rookAttacks(square, occupied) & rooksQueens)
+        );
+    }
+
+    // every square attacked by color, with sliders seeing through occupied
+    public long attackMap(int color, long occupied) {
+        long pawns = pieces[color][PAWN];
+        long attacks = color == WHITE
+            ? ((pawns >>> 9) & ~Bitboard.FILE_H) |
+              ((pawns >>> 7) & ~Bitboard.FILE_A)
+            : ((pawns << 7) & ~Bitboard.FILE_H) |
+              ((pawns << 9) & ~Bitboard.FILE_A);
+
+        for (int type = KNIGHT; type <= KING; ++type) {
+            long bb = pieces[color][type];
+            while (bb != 0) {
+                int sq = Bitboard.lsb(bb);
+                bb &= bb - 1;
+
+                switch (type) {
+                    case KNIGHT:
+                        attacks |= Bitboard.KNIGHT_ATTACKS[sq];
+                        break;
+                    case BISHOP:
+                        attacks |= Bitboard.bishopAttacks(sq, occupied);
+                        break;
+                    case ROOK:
+                        attacks |= Bitboard.rookAttacks(sq, occupied);
+                        break;
+                    case QUEEN:
+                        attacks |= Bitboard.queenAttacks(sq, occupied);
+                        break;
+                    case KING:
+                        attacks |= Bitboard.KING_ATTACKS[sq];
+                        break;
+                }
+            }
+        }
+
+        return attacks;
+    }
+
+    // non-capturing pawn pushes, including the double push from the start rank
+    public long pawnPushes(int square, int color) {
+        long empty = ~occupied;
+        long b = Bitboard.bit(square);
+
+        if (color == WHITE) {
+            long single = (b >>> 8) & empty;
+            return single | (((single & Bitboard.RANK_3) >>> 8) & empty);
+        }
+
+        long single = (b << 8) & empty;
+        return single | (((single & Bitboard.RANK_6) << 8) & empty);
+    }
+
+    /**
+     * Applies a packed move and hands the turn to the other side. Everything
+     * needed to take it back is either in the move itself or pushed onto the
+     * undo stack, so unmakeMove is O(1) too.
+     */
+    public void makeMove(int move) {
+        if (undoCount == undoEp.length) {
+            undoEp = Arrays.copyOf(undoEp, undoCount * 2);
+            undoCastling = Arrays.copyOf(undoCastling, undoCount * 2);
+            undoHalfmove = Arrays.copyOf(undoHalfmove, undoCount * 2);
+        }
+
+        undoEp[undoCount] = epSquare;
+        undoCastling[undoCount] = castling;
+        undoHalfmove[undoCount] = halfmoveClock;
+        undoCount++;
+
+        hashHistory[gamePly & HISTORY_MASK] = hash;
+        gamePly++;
+
+        int from = PackedMove.from(move);
+        int to = PackedMove.to(move);
+        int flags = PackedMove.flags(move);
+        int us = sideToMove;
+
+        hash ^= stateKey();
+
+        if (flags == PackedMove.EP_CAPTURE) {
+            remove(epCaptureSquare(from, to));
+        }
+
+        movePiece(from, to);
+
+        if (PackedMove.isPromotion(move)) {
+            remove(to);
+            put(to, us, PackedMove.promotionType(move));
+        } else if (flags == PackedMove.KING_CASTLE) {
+            movePiece(to + 1, to - 1);
+        } else if (flags == PackedMove.QUEEN_CASTLE) {
+            movePiece(to - 2, to + 1);
+        }
+
+        castling &= CASTLING_MASK[from] & CASTLING_MASK[to];
+        sideToMove = 1 - us;
+
+        // only remember the en passant square when a capture is actually
+        // possible, otherwise identical positions would hash differently
+        epSquare = -1;
+        if (flags == PackedMove.DOUBLE_PUSH) {
+            int ep = (from + to) / 2;
+            if ((Bitboard.PAWN_ATTACKS[us][ep] & pieces[1 - us][PAWN]) != 0) {
+                epSquare = ep;
+            }
+        }
+
+        hash ^= stateKey();
+
+        if (PackedMove.isCapture(move) || PackedMove.piece(move) == PAWN) {
+            halfmoveClock = 0;
+        } else {
+            halfmoveClock++;
+        }
+        if (us == BLACK) fullmoveNumber++;
+    }
+
+    // takes back the last move made with makeMove, which must be move
+    public void unmakeMove(int move) {
+        int from = PackedMove.from(move);
+        int to = PackedMove.to(move);
+        int flags = PackedMove.flags(move);
+        int us = 1 - sideToMove;
+
+        hash ^= stateKey();
+
+        if (PackedMove.isPromotion(move)) {
+            remove(to);
+            put(from, us, PAWN);
+        } else {
+            movePiece(to, from);
+        }
+
+        if (flags == PackedMove.EP_CAPTURE) {
+            put(epCaptureSquare(from, to), sideToMove, PAWN);
+        } else if (PackedMove.isCapture(move)) {
+            put(to, sideToMove, PackedMove.captured(move));
+        } else if (flags == PackedMove.KING_CASTLE) {
+            movePiece(to - 1, to + 1);
+        } else if (flags == PackedMove.QUEEN_CASTLE) {
+            movePiece(to + 1, to - 2);
+        }
+
+        undoCount--;
+        gamePly--;
+        epSquare = undoEp[undoCount];
+        castling = undoCastling[undoCount];
+        halfmoveClock = undoHalfmove[undoCount];
+        sideToMove = us;
+        if (us == BLACK) fullmoveNumber--;
+
+        hash ^= stateKey();
+    }
+
+    /**
+     * How many times the current position has occurred before. Only every
+     * other ply back to the last capture or pawn move can match, so this is
+     * at most 50 compares and usually far fewer.
+     */
+    public int repetitions() {
+        int limit = Math.min(
+            Math.min(halfmoveClock, gamePly),
+            HISTORY_SIZE
+        );
+
+        int count = 0;
+        for (int i = 4; i <= limit; i += 2) {
+            if (hashHistory[(gamePly - i) & HISTORY_MASK] == hash) count++;
+        }
+
+        return count;
+    }
+
+    // the search counts a single repetition as a draw, since if the
+    // position was fine to leave once it's fine to leave again
+    public boolean isRepetition() {
+        int limit = Math.min(
+            Math.min(halfmoveClock, gamePly),
+            HISTORY_SIZE
+        );
+
+        for (int i = 4; i <= limit; i += 2) {
+            if (hashHistory[(gamePly - i) & HISTORY_MASK] == hash) return true;
+        }
+
+        return false;
+    }
+
+    public boolean isFiftyMoveRule() {
+        return halfmoveClock >= 100;
+    }
+
+    /**
+     * Neither side can ever checkmate: bare kings, a single minor piece, or
+     * only bishops that all stand on the same color of square. Works off the
+     * piece bitboards, so it's a handful of population counts.
+     */
+    public boolean isInsufficientMaterial() {
+        long heavy =
+            pieces[WHITE][PAWN] | pieces[BLACK][PAWN] |
+            pieces[WHITE][ROOK] | pieces[BLACK][ROOK] |
+            pieces[WHITE][QUEEN] | pieces[BLACK][QUEEN];
+        if (heavy != 0) return false;
+
+        long knights = pieces[WHITE][KNIGHT] | pieces[BLACK][KNIGHT];
+        long bishops = pieces[WHITE][BISHOP] | pieces[BLACK][BISHOP];
+        if (Long.bitCount(knights | bishops) <= 1) return true;
+
+        return (
+            knights == 0 &&
+            ((bishops & Bitboard.LIGHT_SQUARES) == 0 ||
+                (bishops & ~Bitboard.LIGHT_SQUARES) == 0)
+        );
+    }
+
+    // the square of the pawn taken by an en passant capture from -> to
+    public static int epCaptureSquare(int from, int to) {
+        return Bitboard.square(Bitboard.rankOf(from), Bitboard.fileOf(to));
+    }
+
+    /**
+     * Writes every pseudo-legal move for color whose from square is in
+     * fromMask into buf starting at index count, and returns the new count.
+     */
+    public int generateMoves(int color, int[] buf, int count, long fromMask) {
+        long own = colors[color];
+        long enemy = colors[1 - color];
+
+        long pawns = pieces[color][PAWN] & fromMask;
+        while (pawns != 0) {
+            int from = Bitboard.lsb(pawns);
+            pawns &= pawns - 1;
+
+            count = addPawnMoves(
+                buf,
+                count,
+                from,
+                pawnPushes(from, color) |
+                    (Bitboard.PAWN_ATTACKS[color][from] & enemy),
+                GEN_ALL
+            );
+
+            if (
+                color == sideToMove &&
+                epSquare >= 0 &&
+                (Bitboard.PAWN_ATTACKS[color][from] &
+                    Bitboard.bit(epSquare)) !=
+                0
+            ) {
+                buf[count++] = PackedMove.encode(
+                    from,
+                    epSquare,
+                    PackedMove.EP_CAPTURE,
+                    PAWN,
+                    PAWN
+                );
+            }
+        }
+
+        for (int type = KNIGHT; type <= KING; ++type) {
+            long bb = pieces[color][type] & fromMask;
+            while (bb != 0) {
+                int from = Bitboard.lsb(bb);
+                bb &= bb - 1;
+
+                count = addMoves(
+                    buf,
+                    count,
+                    from,
+                    type,
+                    attacks(from, color, type) & ~own
+                );
+            }
+        }
+
+        if (
+            (pieces[color][KING] & fromMask) != 0 &&
+            (castling & castlingRights(color)) != 0
+        ) {
+            count = addCastling(
+                buf,
+                count,
+                color,
+                attackMap(1 - color, occupied)
+            );
+        }
+
+        return count;
+    }
+
+    /**
+     * Writes every legal move for the side to move whose from square is in
+     * fromMask into buf starting at index count, and returns the new count.
+     *
+     * Checkers, pinned pieces and the squares the king can't step onto are
+     * worked out once up front, so each candidate is filtered with a couple
+     * of mask tests instead of being played and taken back.
+     */
+    public int generateLegalMoves(int[] buf, int count, long fromMask) {
+        return generateLegalMoves(buf, count, fromMask, GEN_ALL);
+    }
+
+    /**
+     * Same as above, but only writes the kinds of moves asked for (any of
+     * GEN_CAPTURES and GEN_QUIETS), so a search can generate captures first
+     * and only pay for the quiet moves if it gets that far.
+     */
+    public int generateLegalMoves(
+        int[] buf,
+        int count,
+        long fromMask,
+        int kinds
+    ) {
+        int us = sideToMove, them = 1 - us;
+        long own = colors[us];
+        long enemy = colors[them];
+
+        boolean captures = (kinds & GEN_CAPTURES) != 0;
+        boolean quiets = (kinds & GEN_QUIETS) != 0;
+        long targets = (captures ? enemy : 0L) | (quiets ? ~occupied : 0L);
+
+        int king = kingSquare[us];
+        long kingBit = Bitboard.bit(king);
+
+        long checkers = attackersTo(king, occupied) & enemy;
+
+        if ((fromMask & kingBit) != 0) {
+            // the king itself is removed so it can't hide behind its own
+            // square from a slider it's stepping away from
+            long danger = attackMap(them, occupied & ~kingBit);
+            count = addMoves(
+                buf,
+                count,
+                king,
+                KING,
+                Bitboard.KING_ATTACKS[king] & targets & ~danger
+            );
+
+            if (
+                quiets &&
+                checkers == 0 &&
+                (castling & castlingRights(us)) != 0
+            ) {
+                count = addCastling(buf, count, us, danger);
+            }
+        }
+
+        if (Long.bitCount(checkers) > 1) return count;
+
+        // with one checker every other move has to capture or block it
+        long checkMask = checkers == 0
+            ? -1L
+            : checkers | Bitboard.BETWEEN[king][Bitboard.lsb(checkers)];
+
+        long pinned = 0L;
+        long snipers =
+            (Bitboard.rookAttacks(king, 0L) &
+                (pieces[them][ROOK] | pieces[them][QUEEN])) |
+            (Bitboard.bishopAttacks(king, 0L) &
+                (pieces[them][BISHOP] | pieces[them][QUEEN]));
+        while (snipers != 0) {
+            int sniper = Bitboard.lsb(snipers);
+            snipers &= snipers - 1;
+
+            long blockers = Bitboard.BETWEEN[king][sniper] & occupied;
+            if (Long.bitCount(blockers) == 1) {
+                pinned |= blockers & own;
+            }
+        }
+
+        long pawns = pieces[us][PAWN] & fromMask;
+        while (pawns != 0) {
+            int from = Bitboard.lsb(pawns);
+            pawns &= pawns - 1;
+
+            long allowed = checkMask;
+            if ((pinned & Bitboard.bit(from)) != 0) {
+                allowed &= Bitboard.LINE[king][from];
+            }
+
+            // pushes onto the last rank are still wanted for captures, for
+            // the queen promotion
+            long pushes = pawnPushes(from, us);
+            if (!quiets) pushes &= captures ? PROMOTION_RANKS : 0L;
+
+            count = addPawnMoves(
+                buf,
+                count,
+                from,
+                (pushes |
+                    (Bitboard.PAWN_ATTACKS[us][from] & enemy & targets)) &
+                allowed,
+                kinds
+            );
+
+            if (
+                captures &&
+                epSquare >= 0 &&
+                (Bitboard.PAWN_ATTACKS[us][from] & Bitboard.bit(epSquare)) !=
+                0 &&
+                isLegalEpCapture(from, king)
+            ) {
+                buf[count++] = PackedMove.encode(
+                    from,
+                    epSquare,
+                    PackedMove.EP_CAPTURE,
+                    PAWN,
+                    PAWN
+                );
+            }
+        }
+
+        for (int type = KNIGHT; type < KING; ++type) {
+            long bb = pieces[us][type] & fromMask;
+            while (bb != 0) {
+                int from = Bitboard.lsb(bb);
+                bb &= bb - 1;
+
+                long allowed = checkMask & targets;
+                if ((pinned & Bitboard.bit(from)) != 0) {
+                    allowed &= Bitboard.LINE[king][from];
+                }
+
+                count = addMoves(
+                    buf,
+                    count,
+                    from,
+                    type,
+                    attacks(from, us, type) & allowed
+                );
+            }
+        }
+
+        return count;
+    }
+
+    // en passant removes two pawns from the same rank at once, which can
+    // uncover a check no pin mask describes, so it gets a direct occupancy test
+    private boolean isLegalEpCapture(int from, int king) {
+        int captured = epCaptureSquare(from, epSquare);
+        long occ =
+            (occupied & ~Bitboard.bit(from) & ~Bitboard.bit(captured)) |
+            Bitboard.bit(epSquare);
+
+        long attackers =
+            attackersTo(king, occ) &
+            colors[1 - sideToMove] &
+            ~Bitboard.bit(captured);
+
+        return attackers == 0;
+    }
+
+    /**
+     * Writes the pawn moves from from to each of targets, which has to hold
+     * only pushes and captures. A pawn reaching the last rank gets a move for
+     * each promotion piece, queen first, split between captures and quiets
+     * the way kinds asks for.
+     */
+    private int addPawnMoves(
+        int[] buf,
+        int count,
+        int from,
+        long targets,
+        int kinds
+    ) {
+        while (targets != 0) {
+            int to = Bitboard.lsb(targets);
+            targets &= targets - 1;
+
+            int captured = mailbox[to];
+
+            if ((Bitboard.bit(to) & PROMOTION_RANKS) == 0) {
+                int flags = captured != EMPTY
+                    ? PackedMove.CAPTURE
+                    : Math.abs(to - from) == 16
+                        ? PackedMove.DOUBLE_PUSH
+                        : PackedMove.QUIET;
+                buf[count++] =
+                    PackedMove.encode(from, to, flags, PAWN, captured);
+                continue;
+            }
+
+            int base = captured == EMPTY
+                ? PackedMove.PROMO_KNIGHT
+                : PackedMove.PROMO_KNIGHT_CAPTURE;
+            for (int type = QUEEN; type >= KNIGHT; --type) {
+                boolean tactical = captured != EMPTY || type == QUEEN;
+                int wanted = tactical ? GEN_CAPTURES : GEN_QUIETS;
+                if ((kinds & wanted) == 0) continue;
+
+                buf[count++] = PackedMove.encode(
+                    from,
+                    to,
+                    base + type - KNIGHT,
+                    PAWN,
+                    captured
+                );
+            }
+        }
+
+        return count;
+    }
+
+    private static int castlingRights(int color) {
+        return color == WHITE
+            ? WHITE_KINGSIDE | WHITE_QUEENSIDE
+            : BLACK_KINGSIDE | BLACK_QUEENSIDE;
+    }
+
+    /**
+     * Writes the castling moves color is allowed: the right is still there,
+     * king and rook are home, everything between them is empty, and the king
+     * doesn't start on, cross or land on a square in danger.
+     */
+    private int addCastling(int[] buf, int count, int color, long danger) {
+        int king = KING_HOME[color];
+        if (kingSquare[color] != king) return count;
+
+        long rooks = pieces[color][ROOK];
+        // the squares the king starts on, crosses and lands on
+        long kingsidePath = Bitboard.BETWEEN[king - 1][king + 3];
+        long queensidePath = Bitboard.BETWEEN[king + 1][king - 3];
+        int kingside = color == WHITE ? WHITE_KINGSIDE : BLACK_KINGSIDE;
+        int queenside = color == WHITE ? WHITE_QUEENSIDE : BLACK_QUEENSIDE;
+
+        if (
+            (castling & kingside) != 0 &&
+            (rooks & Bitboard.bit(king + 3)) != 0 &&
+            (occupied & Bitboard.BETWEEN[king][king + 3]) == 0 &&
+            (danger & kingsidePath) == 0
+        ) {
+            buf[count++] = PackedMove.encode(
+                king,
+                king + 2,
+                PackedMove.KING_CASTLE,
+                KING,
+                EMPTY
+            );
+        }
+
+        if (
+            (castling & queenside) != 0 &&
+            (rooks & Bitboard.bit(king - 4)) != 0 &&
+            (occupied & Bitboard.BETWEEN[king][king - 4]) == 0 &&
+            (danger & queensidePath) == 0
+        ) {
+            buf[count++] = PackedMove.encode(
+                king,
+                king - 2,
+                PackedMove.QUEEN_CASTLE,
+                KING,
+                EMPTY
+            );
+        }
+
+        return count;
+    }
+
+    private int addMoves(
+        int[] buf,
+        int count,
+        int from,
+        int type,
+        long targets
+    ) {
+        while (targets != 0) {
+            int to = Bitboard.lsb(targets);
+            targets &= targets - 1;
+
+            int captured = mailbox[to];
+            buf[count++] = PackedMove.encode(
+                from,
+                to,
+                captured == EMPTY ? PackedMove.QUIET : PackedMove.CAPTURE,
+                type,
+                captured
+            );
+        }
+
+        return count;
+    }
+}
@@ -0,0 +1,230 @@
+package source;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Keyboard input a key at a time instead of a line at a time. The terminal
+ * is switched out of line mode with stty, and a daemon thread reads stdin,
+ * decodes escape sequences and UTF-8, and pushes one int per key into a
+ * ring buffer that the render loop drains between frames.
+ *
+ * A key is its code point, or one of the KEY_ constants for keys that
+ * don't have one; those sit above the Unicode range so the two can't
+ * clash.
+ *
+ * The ring has a single producer (the input thread) and a single consumer
+ * (the render loop), so it needs no locks: each side only writes its own
+ * index, and the volatile write of tail publishes the key before it.
+ *
+ * Signals are left on, so Ctrl+C still stops the program; the old terminal
+ * settings are put back by a shutdown hook however it exits.
+ */
+class RawInput {
+
+    public static final int KEY_UP = 0x110000;
+    public static final int KEY_DOWN = 0x110001;
+    public static final int KEY_LEFT = 0x110002;
+    public static final int KEY_RIGHT = 0x110003;
+    public static final int KEY_ENTER = 0x110004;
+    public static final int KEY_BACKSPACE = 0x110005;
+    public static final int KEY_ESCAPE = 0x110006;
+
+    private static final int CAPACITY = 256; // a power of two
+    private static final int MASK = CAPACITY - 1;
+
+    // how long to wait after ESC for the rest of an escape sequence before
+    // taking it as the escape key on its own
+    private static final long ESCAPE_WAIT_MS = 25;
+
+    private final int[] ring = new int[CAPACITY];
+    private volatile int head = 0; // next to read, only the consumer writes
+    private volatile int tail = 0; // next to write, only the producer writes
+    private volatile Thread consumer;
+
+    private final InputStream in = new FileInputStream(FileDescriptor.in);
+    private final String savedSettings;
+
+    private RawInput(String savedSettings) {
+        this.savedSettings = savedSettings;
+    }
+
+    /**
+     * Puts the terminal into key-at-a-time mode and starts reading, or
+     * returns null if there's no terminal or stty isn't there, in which
+     * case input stays line based.
+     */
+    public static RawInput start() {
+        if (System.console() == null) return null;
+
+        String saved;
+        try {
+            saved = stty("-g");
+            if (saved == null) return null;
+            if (stty("-icanon", "-echo", "min", "1", "time", "0") == null) {
+                return null;
+            }
+        } catch (IOException | InterruptedException e) {
+            return null;
+        }
+
+        RawInput input = new RawInput(saved.trim());
+        Runtime.getRuntime().addShutdownHook(new Thread(input::restore));
+
+        Thread reader = new Thread(input::read, "input");
+        reader.setDaemon(true);
+        reader.start();
+
+        return input;
+    }
+
+    // stdout of stty run against the real terminal, or null if it failed
+    private static String stty(String... args)
+        throws IOException, InterruptedException {
+        String[] command = new String[args.length + 1];
+        command[0] = "stty";
+        System.arraycopy(args, 0, command, 1, args.length);
+
+        Process process = new ProcessBuilder(command)
+            .redirectInput(ProcessBuilder.Redirect.from(new File("/dev/tty")))
+            .start();
+
+        BufferedReader reader = new BufferedReader(
+            new InputStreamReader(process.getInputStream())
+        );
+        String output = reader.readLine();
+        process.waitFor();
+
+        if (process.exitValue() != 0) return null;
+        return output == null ? "" : output;
+    }
+
+    public void restore() {
+        try {
+            stty(savedSettings);
+        } catch (IOException | InterruptedException e) {
+            // nothing left to do, the shell's reset will have to fix it
+        }
+    }
+
+    /**
+     * Copies the keys waiting into keys, oldest first, and returns how
+     * many there were. Never blocks.
+     */
+    public int drain(int[] keys) {
+        int h = head;
+        int count = Math.min(tail - h, keys.length);
+        for (int i = 0; i < count; ++i) {
+            keys[i] = ring[(h + i) & MASK];
+        }
+        head = h + count;
+        return count;
+    }
+
+    // parks the calling thread until at least one key is waiting
+    public void await() {
+        consumer = Thread.currentThread();
+        while (head == tail) {
+            LockSupport.park(this);
+        }
+    }
+
+    private void push(int key) {
+        int t = tail;
+        // the render loop is hopelessly behind, so drop rather than wait
+        if (t - head == CAPACITY) return;
+
+        ring[t & MASK] = key;
+        tail = t + 1;
+
+        Thread waiting = consumer;
+        if (waiting != null) LockSupport.unpark(waiting);
+    }
+
+    // the input thread: decodes stdin into keys until it closes
+    private void read() {
+        try {
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b == 0x1B) {
+                    readEscape();
+                } else if (b == '\r' || b == '\n') {
+                    push(KEY_ENTER);
+                } else if (b == 0x7F || b == 0x08) {
+                    push(KEY_BACKSPACE);
+                } else if (b >= 0xC0) {
+                    push(readUtf8(b));
+                } else if (b >= 0x20 && b < 0x80) {
+                    push(b);
+                }
+                // other control characters and stray continuation bytes
+                // mean nothing here
+            }
+        } catch (IOException e) {
+            // stdin is gone, there's nothing more to read
+        }
+    }
+
+    // after ESC: an arrow key sequence (ESC [ A or ESC O A), or ESC itself
+    private void readEscape() throws IOException {
+        if (!waitForByte()) {
+            push(KEY_ESCAPE);
+            return;
+        }
+
+        int b = in.read();
+        if (b != '[' && b != 'O') {
+            // alt plus a key; only the key matters
+            push(KEY_ESCAPE);
+            return;
+        }
+
+        // skip any parameters (modifiers and the like) to the final byte
+        do {
+            b = in.read();
+        } while (b != -1 && b >= 0x20 && b < 0x40);
+
+        switch (b) {
+            case 'A':
+                push(KEY_UP);
+                break;
+            case 'B':
+                push(KEY_DOWN);
+                break;
+            case 'C':
+                push(KEY_RIGHT);
+                break;
+            case 'D':
+                push(KEY_LEFT);
+                break;
+            default:
+                // home, end, function keys and so on aren't used
+                break;
+        }
+    }
+
+    private int readUtf8(int first) throws IOException {
+        int length = first >= 0xF0 ? 3 : first >= 0xE0 ? 2 : 1;
+        int codePoint = first & (0x3F >> length);
+        for (int i = 0; i < length; ++i) {
+            codePoint = (codePoint << 6) | (in.read() & 0x3F);
+        }
+        return codePoint;
+    }
+
+    // whether another byte turns up within ESCAPE_WAIT_MS
+    private boolean waitForByte() throws IOException {
+        long deadline = System.nanoTime() + ESCAPE_WAIT_MS * 1000000;
+        while (in.available() == 0) {
+            if (System.nanoTime() > deadline) return false;
+            LockSupport.parkNanos(1000000);
+        }
+        return true;
+    }
+}
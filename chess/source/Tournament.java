@@ -0,0 +1,628 @@
+package source;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import source.search.LazySmp;
+import source.search.Search;
+import source.search.SearchLimits;
+import source.search.SearchResult;
+import source.search.TranspositionTable;
+
+/**
+ * Plays engine A against engine B for a batch of games and keeps a running
+ * Elo estimate and SPRT, for telling whether a change to the engine is an
+ * improvement.
+ *
+ * Each worker thread plays whole games on its own headless ChessBoard with
+ * its own pair of players, so nothing is shared between games but the
+ * score. Every opening is played twice with the colors swapped, which
+ * cancels out most of the bias of a lopsided opening. An engine is either
+ * "engine" (this build, in process) or "uci:COMMAND" (any UCI engine, such
+ * as another build started with java -cp OTHER source.Uci).
+ *
+ * Games end on the board's own rules, or are adjudicated: a draw after
+ * maxplies, a draw once both sides have scored the game as level for long
+ * enough, and a win once both agree one side is well ahead. An engine that
+ * has no move or plays an illegal one loses.
+ *
+ * Usage: java -cp bin source.Tournament [games N] [concurrency N]
+ *     [openings FILE] [nodes N | depth N | movetime MS] [hash MB]
+ *     [maxplies N] [elo0 E] [elo1 E] [a ENGINE] [b ENGINE]
+ */
+public class Tournament {
+
+    // resign once both sides score the game past this for this many moves
+    private static final int RESIGN_SCORE = 1000;
+    private static final int RESIGN_PLIES = 8;
+    // agree a draw once both sides score it inside this after drawPly
+    private static final int DRAW_SCORE = 10;
+    private static final int DRAW_PLIES = 16;
+    private static final int DRAW_AFTER_PLY = 80;
+
+    // SPRT error rates
+    private static final double ALPHA = 0.05;
+    private static final double BETA = 0.05;
+
+    private final List<String> openings;
+    private final int games;
+    private final SearchLimits limits;
+    private final int hash;
+    private final int maxPlies;
+    private final String engineA;
+    private final String engineB;
+
+    private final AtomicInteger nextGame = new AtomicInteger();
+    private final double lowerBound;
+    private final double upperBound;
+    private final double elo0;
+    private final double elo1;
+
+    // from engine A's side
+    private int wins, draws, losses;
+    private volatile boolean decided = false;
+
+    Tournament(
+        List<String> openings,
+        int games,
+        SearchLimits limits,
+        int hash,
+        int maxPlies,
+        double elo0,
+        double elo1,
+        String engineA,
+        String engineB
+    ) {
+        this.openings = openings;
+        this.games = games;
+        this.limits = limits;
+        this.hash = hash;
+        this.maxPlies = maxPlies;
+        this.elo0 = elo0;
+        this.elo1 = elo1;
+        this.engineA = engineA;
+        this.engineB = engineB;
+        this.lowerBound = Math.log(BETA / (1 - ALPHA));
+        this.upperBound = Math.log((1 - BETA) / ALPHA);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int games = 100;
+        int concurrency = Runtime.getRuntime().availableProcessors();
+        String openingFile = null;
+        SearchLimits limits = SearchLimits.depth(6);
+        int hash = 16;
+        int maxPlies = 400;
+        double elo0 = 0, elo1 = 5;
+        String engineA = "engine";
+        String engineB = "engine";
+
+        for (int i = 0; i < args.length; ++i) {
+            if (i + 1 >= args.length) {
+                System.err.println("missing value for " + args[i]);
+                return;
+            }
+
+            String value = args[++i];
+            switch (args[i - 1]) {
+                case "games":
+                    games = Integer.parseInt(value);
+                    break;
+                case "concurrency":
+                    concurrency = Integer.parseInt(value);
+                    break;
+                case "openings":
+                    openingFile = value;
+                    break;
+                case "nodes":
+                    limits = new SearchLimits();
+                    limits.nodes = Long.parseLong(value);
+                    break;
+                case "depth":
+                    limits = SearchLimits.depth(Integer.parseInt(value));
+                    break;
+                case "movetime":
+                    limits = SearchLimits.moveTime(Long.parseLong(value));
+                    break;
+                case "hash":
+                    hash = Integer.parseInt(value);
+                    break;
+                case "maxplies":
+                    maxPlies = Integer.parseInt(value);
+                    break;
+                case "elo0":
+                    elo0 = Double.parseDouble(value);
+                    break;
+                case "elo1":
+                    elo1 = Double.parseDouble(value);
+                    break;
+                case "a":
+                    engineA = value;
+                    break;
+                case "b":
+                    engineB = value;
+                    break;
+                default:
+                    System.err.println("unknown option " + args[i - 1]);
+                    return;
+            }
+        }
+
+        List<String> openings = new ArrayList<String>();
+        if (openingFile == null) {
+            openings.add(Position.START_FEN);
+        } else {
+            try (
+                BufferedReader reader = new BufferedReader(
+                    new FileReader(openingFile)
+                )
+            ) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (line.isEmpty() || line.startsWith("#")) continue;
+                    openings.add(line);
+                }
+            }
+        }
+
+        new Tournament(
+            openings,
+            games,
+            limits,
+            hash,
+            maxPlies,
+            elo0,
+            elo1,
+            engineA,
+            engineB
+        ).run(Math.max(1, concurrency));
+    }
+
+    void run(int concurrency) {
+        System.out.println(
+            engineA +
+            " vs " +
+            engineB +
+            ", " +
+            games +
+            " games, " +
+            openings.size() +
+            " openings, " +
+            concurrency +
+            " at a time"
+        );
+
+        // JDK 17 has no virtual threads, and every game is busy searching
+        // anyway, so a worker per core is all that helps
+        ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+        for (int i = 0; i < concurrency; ++i) {
+            pool.execute(this::work);
+        }
+
+        pool.shutdown();
+        try {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        System.out.println("final: " + summary());
+    }
+
+    // one worker: plays games until they run out or the SPRT has decided
+    private void work() {
+        Player a = null, b = null;
+        try {
+            a = Player.create(engineA, hash);
+            b = Player.create(engineB, hash);
+
+            int game;
+            while (!decided && (game = nextGame.getAndIncrement()) < games) {
+                String opening = openings.get((game / 2) % openings.size());
+                boolean aIsWhite = game % 2 == 0;
+
+                GameResult result = aIsWhite
+                    ? play(opening, a, b)
+                    : play(opening, b, a);
+                record(game, opening, aIsWhite, result);
+            }
+        } catch (IOException | RuntimeException e) {
+            // stop the match rather than quietly skip this worker's games
+            System.err.println("engine failed: " + e);
+            decided = true;
+        } finally {
+            if (a != null) a.close();
+            if (b != null) b.close();
+        }
+    }
+
+    private static final class GameResult {
+
+        // a ChessBoard result: the winning color or a draw code
+        final int winner;
+        final String reason;
+        final int plies;
+
+        GameResult(int winner, String reason, int plies) {
+            this.winner = winner;
+            this.reason = reason;
+            this.plies = plies;
+        }
+    }
+
+    private GameResult play(String opening, Player white, Player black)
+        throws IOException {
+        ChessBoard board = ChessBoard.fromFen(opening);
+        String startFen = board.toFen();
+        List<String> moves = new ArrayList<String>();
+
+        white.newGame();
+        black.newGame();
+
+        int resignPlies = 0, drawPlies = 0;
+        int lastWinner = ChessBoard.NO_RESULT;
+
+        // ChessBoard only checks a position once a move has been made on it
+        board.checkInCheck();
+        board.checkGameOver();
+
+        for (int ply = 0; !board.isGameOver(); ++ply) {
+            if (ply >= maxPlies) {
+                return new GameResult(ChessBoard.DRAW, "max plies", ply);
+            }
+
+            int side = board.position.getSideToMove();
+            Player mover = side == Position.WHITE ? white : black;
+            SearchResult result = mover.think(
+                startFen,
+                moves,
+                board.position.copy(),
+                limits
+            );
+
+            // findMove only matches legal moves, so this also catches a
+            // move that was never legal here
+            int move = result.bestMove == PackedMove.NONE
+                ? PackedMove.NONE
+                : board.position.findMove(PackedMove.toString(result.bestMove));
+            if (move == PackedMove.NONE) {
+                return new GameResult(1 - side, "illegal move", ply);
+            }
+
+            // the score from white's side, so both players' can be compared
+            int score = side == Position.WHITE ? result.score : -result.score;
+            int winner = score > 0 ? ChessBoard.WHITE_WINS : ChessBoard.BLACK_WINS;
+
+            if (Math.abs(score) >= RESIGN_SCORE && winner == lastWinner) {
+                resignPlies++;
+            } else {
+                resignPlies = Math.abs(score) >= RESIGN_SCORE ? 1 : 0;
+            }
+            lastWinner = Math.abs(score) >= RESIGN_SCORE
+                ? winner
+                : ChessBoard.NO_RESULT;
+            if (resignPlies >= RESIGN_PLIES) {
+                return new GameResult(winner, "adjudicated win", ply);
+            }
+
+            drawPlies = ply >= DRAW_AFTER_PLY && Math.abs(score) <= DRAW_SCORE
+                ? drawPlies + 1
+                : 0;
+            if (drawPlies >= DRAW_PLIES) {
+                return new GameResult(
+                    ChessBoard.DRAW,
+                    "adjudicated draw",
+                    ply
+                );
+            }
+
+            board.makeMove(move);
+            moves.add(PackedMove.toString(move));
+
+            board.checkInCheck();
+            board.checkGameOver();
+        }
+
+        return new GameResult(
+            board.getResult(),
+            ChessBoard.describeResult(board.getResult()),
+            moves.size()
+        );
+    }
+
+    private synchronized void record(
+        int game,
+        String opening,
+        boolean aIsWhite,
+        GameResult result
+    ) {
+        String score;
+        if (result.winner < 0) {
+            draws++;
+            score = "1/2-1/2";
+        } else if ((result.winner == ChessBoard.WHITE_WINS) == aIsWhite) {
+            wins++;
+            score = aIsWhite ? "1-0" : "0-1";
+        } else {
+            losses++;
+            score = aIsWhite ? "0-1" : "1-0";
+        }
+
+        System.out.println(
+            "game " +
+            (game + 1) +
+            " (" +
+            (aIsWhite ? "A" : "B") +
+            " white) " +
+            score +
+            " " +
+            result.reason +
+            " after " +
+            result.plies +
+            " plies | " +
+            summary()
+        );
+
+        double llr = llr();
+        if (!decided && (llr >= upperBound || llr <= lowerBound)) {
+            decided = true;
+            System.out.println(
+                "SPRT stopped: " +
+                (llr >= upperBound ? "H1" : "H0") +
+                " accepted (elo " +
+                (llr >= upperBound ? ">= " + elo1 : "<= " + elo0) +
+                ")"
+            );
+        }
+    }
+
+    private synchronized String summary() {
+        int n = wins + draws + losses;
+        if (n == 0) return "no games";
+
+        double score = (wins + draws / 2.0) / n;
+        double variance = variance(score);
+        // 95% interval on the score, turned into Elo at both ends
+        double margin = 1.96 * Math.sqrt(variance / n);
+
+        return String.format(
+            "W %d D %d L %d | elo %.1f +- %.1f | llr %.2f (%.2f, %.2f)",
+            wins,
+            draws,
+            losses,
+            elo(score),
+            (elo(score + margin) - elo(score - margin)) / 2,
+            llr(),
+            lowerBound,
+            upperBound
+        );
+    }
+
+    /**
+     * Per game variance of the score, with half a game of each result
+     * added as a prior. Without it a clean sweep has no variance at all,
+     * and the LLR either blows up or never moves.
+     */
+    private synchronized double variance(double score) {
+        double w = wins + 0.5, d = draws + 0.5, l = losses + 0.5;
+        return (w * Math.pow(1 - score, 2) +
+                d * Math.pow(0.5 - score, 2) +
+                l * Math.pow(score, 2)) /
+            (w + d + l);
+    }
+
+    private static double elo(double score) {
+        score = Math.min(Math.max(score, 1e-6), 1 - 1e-6);
+        return -400 * Math.log10(1 / score - 1);
+    }
+
+    private static double expectedScore(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    /**
+     * Log likelihood ratio of elo1 against elo0, using the normal
+     * approximation to the trinomial (the "GSPRT" most testing frameworks
+     * use): LLR = n (s1 - s0)(2s - s0 - s1) / (2 var).
+     */
+    private synchronized double llr() {
+        int n = wins + draws + losses;
+        if (n == 0) return 0;
+
+        double score = (wins + draws / 2.0) / n;
+        double variance = variance(score);
+
+        double s0 = expectedScore(elo0);
+        double s1 = expectedScore(elo1);
+        return n * (s1 - s0) * (2 * score - s0 - s1) / (2 * variance);
+    }
+}
+
+/**
+ * One side of a tournament game. Scores come back in centipawns from the
+ * side to move's point of view, the same as a SearchResult from the engine.
+ */
+interface Player {
+
+    static Player create(String spec, int hash) throws IOException {
+        if (spec.startsWith("uci:")) {
+            return new UciPlayer(spec.substring(4), hash);
+        }
+        if (spec.equals("engine")) {
+            return new EnginePlayer(hash);
+        }
+        throw new IllegalArgumentException("unknown engine " + spec);
+    }
+
+    void newGame() throws IOException;
+
+    /**
+     * Picks a move for position, which was reached from startFen by moves
+     * (in UCI notation), for engines that want the history.
+     */
+    SearchResult think(
+        String startFen,
+        List<String> moves,
+        Position position,
+        SearchLimits limits
+    ) throws IOException;
+
+    void close();
+}
+
+// this build's engine, searched in process
+final class EnginePlayer implements Player {
+
+    private final TranspositionTable tt;
+    private final LazySmp search;
+
+    EnginePlayer(int hash) {
+        this.tt = new TranspositionTable(hash);
+        this.search = new LazySmp(tt, 1);
+    }
+
+    @Override
+    public void newGame() {
+        tt.clear();
+    }
+
+    @Override
+    public SearchResult think(
+        String startFen,
+        List<String> moves,
+        Position position,
+        SearchLimits limits
+    ) {
+        return search.search(position, limits);
+    }
+
+    @Override
+    public void close() {}
+}
+
+// any engine that speaks UCI, run as a child process
+final class UciPlayer implements Player {
+
+    private final Process process;
+    private final BufferedReader in;
+    private final BufferedWriter out;
+
+    UciPlayer(String command, int hash) throws IOException {
+        this.process = new ProcessBuilder(command.trim().split("\\s+"))
+            .redirectError(ProcessBuilder.Redirect.INHERIT)
+            .start();
+        this.in = new BufferedReader(
+            new InputStreamReader(process.getInputStream())
+        );
+        this.out = new BufferedWriter(
+            new OutputStreamWriter(process.getOutputStream())
+        );
+
+        send("uci");
+        waitFor("uciok");
+        send("setoption name Hash value " + hash);
+    }
+
+    @Override
+    public void newGame() throws IOException {
+        send("ucinewgame");
+        send("isready");
+        waitFor("readyok");
+    }
+
+    @Override
+    public SearchResult think(
+        String startFen,
+        List<String> moves,
+        Position position,
+        SearchLimits limits
+    ) throws IOException {
+        StringBuilder command = new StringBuilder("position fen ");
+        command.append(startFen);
+        if (!moves.isEmpty()) {
+            command.append(" moves ").append(String.join(" ", moves));
+        }
+        send(command.toString());
+
+        StringBuilder go = new StringBuilder("go");
+        if (limits.nodes > 0) go.append(" nodes ").append(limits.nodes);
+        if (limits.moveTime > 0) go.append(" movetime ").append(limits.moveTime);
+        if (limits.depth < new SearchLimits().depth) {
+            go.append(" depth ").append(limits.depth);
+        }
+        send(go.toString());
+
+        int score = 0, depth = 0;
+        String line;
+        while ((line = in.readLine()) != null) {
+            String[] tokens = line.trim().split("\\s+");
+
+            if (tokens[0].equals("bestmove")) {
+                int move = tokens.length > 1
+                    ? position.findMove(tokens[1])
+                    : PackedMove.NONE;
+                return new SearchResult(move, score, depth, 0, 0, new int[0]);
+            }
+            if (!tokens[0].equals("info")) continue;
+            if (tokens.length > 1 && tokens[1].equals("string")) continue;
+
+            // a garbled or cut off info line is skipped as a whole
+            int lineDepth = depth, lineScore = score;
+            try {
+                for (int i = 1; i + 1 < tokens.length; ++i) {
+                    if (tokens[i].equals("depth")) {
+                        lineDepth = Integer.parseInt(tokens[i + 1]);
+                    } else if (tokens[i].equals("cp")) {
+                        lineScore = Integer.parseInt(tokens[i + 1]);
+                    } else if (tokens[i].equals("mate")) {
+                        // mate in n moves is 2n - 1 plies, mated in n is 2n
+                        int mate = Integer.parseInt(tokens[i + 1]);
+                        lineScore = mate > 0
+                            ? Search.MATE - (2 * mate - 1)
+                            : -Search.MATE + 2 * -mate;
+                    }
+                }
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            depth = lineDepth;
+            score = lineScore;
+        }
+
+        throw new IOException("engine exited mid search");
+    }
+
+    @Override
+    public void close() {
+        try {
+            send("quit");
+        } catch (IOException e) {
+            // already gone
+        }
+        process.destroy();
+    }
+
+    private void send(String command) throws IOException {
+        out.write(command);
+        out.newLine();
+        out.flush();
+    }
+
+    private void waitFor(String reply) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.trim().equals(reply)) return;
+        }
+        throw new IOException("engine exited before " + reply);
+    }
+}
@@ -0,0 +1,280 @@
+package source;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import source.search.LazySmp;
+import source.search.SearchLimits;
+import source.search.SearchResult;
+import source.search.TranspositionTable;
+
+/**
+ * UCI front end, for running the engine under tournament managers and
+ * other tools with no terminal. Supports uci, isready, ucinewgame,
+ * setoption (Hash, Threads), position, go (depth, movetime, nodes, wtime,
+ * btime, winc, binc, infinite), stop and quit.
+ *
+ * The main thread only reads commands; each go runs on its own thread, so
+ * stop and isready are answered while a search is running. Search progress
+ * is printed as info lines after every iteration.
+ *
+ * Usage: java -cp bin source.Uci
+ */
+class Uci {
+
+    private static final String NAME = "java-projects chess";
+    private static final int DEFAULT_HASH = 16;
+
+    private final TranspositionTable tt = new TranspositionTable(DEFAULT_HASH);
+    private final LazySmp search = new LazySmp(tt, 1);
+    private Position position = Position.startPosition();
+
+    private Thread searchThread;
+    private long searchStart;
+    private volatile boolean stopRequested = false;
+
+    public static void main(String[] args) throws IOException {
+        new Uci().run();
+    }
+
+    private void run() throws IOException {
+        search.setListener(this::printInfo);
+
+        BufferedReader in = new BufferedReader(
+            new InputStreamReader(System.in)
+        );
+
+        String line;
+        while ((line = in.readLine()) != null) {
+            String[] tokens = line.trim().split("\\s+");
+            if (tokens[0].isEmpty()) continue;
+
+            switch (tokens[0]) {
+                case "uci":
+                    System.out.println("id name " + NAME);
+                    System.out.println("id author StarIitNova");
+                    System.out.println(
+                        "option name Hash type spin default " +
+                        DEFAULT_HASH +
+                        " min 1 max 65536"
+                    );
+                    System.out.println(
+                        "option name Threads type spin default 1 min 1 max 512"
+                    );
+                    System.out.println("uciok");
+                    break;
+                case "isready":
+                    System.out.println("readyok");
+                    break;
+                case "ucinewgame":
+                    waitForSearch();
+                    tt.clear();
+                    break;
+                case "setoption":
+                    waitForSearch();
+                    setOption(tokens);
+                    break;
+                case "position":
+                    waitForSearch();
+                    setPosition(tokens);
+                    break;
+                case "go":
+                    waitForSearch();
+                    go(tokens);
+                    break;
+                case "stop":
+                    stopSearch();
+                    break;
+                case "quit":
+                    stopSearch();
+                    return;
+                default:
+                    System.out.println("info string unknown command " + line);
+                    break;
+            }
+        }
+
+        // stdin closed, let a running search finish its bestmove
+        waitForSearch();
+    }
+
+    // setoption name <name> value <value>
+    private void setOption(String[] tokens) {
+        String name = valueAfter(tokens, "name");
+        String value = valueAfter(tokens, "value");
+        if (name == null || value == null) return;
+
+        try {
+            if (name.equalsIgnoreCase("Hash")) {
+                tt.resize(Integer.parseInt(value));
+            } else if (name.equalsIgnoreCase("Threads")) {
+                search.setThreads(Integer.parseInt(value));
+            } else {
+                System.out.println("info string unknown option " + name);
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("info string bad value " + value);
+        }
+    }
+
+    // position (startpos | fen <fen>) [moves <move>...]
+    private void setPosition(String[] tokens) {
+        int i = 1;
+        if (i < tokens.length && tokens[i].equals("startpos")) {
+            position = Position.startPosition();
+            i++;
+        } else if (i < tokens.length && tokens[i].equals("fen")) {
+            StringBuilder fen = new StringBuilder();
+            for (i++; i < tokens.length && !tokens[i].equals("moves"); ++i) {
+                if (fen.length() > 0) fen.append(' ');
+                fen.append(tokens[i]);
+            }
+            try {
+                position = Position.fromFen(fen.toString());
+            } catch (IllegalArgumentException e) {
+                // keep the last position rather than die under a GUI
+                System.out.println("info string invalid fen: " + fen);
+                return;
+            }
+        }
+
+        if (i < tokens.length && tokens[i].equals("moves")) {
+            for (i++; i < tokens.length; ++i) {
+                int move = position.findMove(tokens[i]);
+                if (move == PackedMove.NONE) {
+                    System.out.println("info string illegal move " + tokens[i]);
+                    break;
+                }
+                position.makeMove(move);
+            }
+        }
+    }
+
+    private void go(String[] tokens) {
+        SearchLimits limits = new SearchLimits();
+
+        for (int i = 1; i < tokens.length; ++i) {
+            String token = tokens[i];
+            if (token.equals("infinite")) {
+                limits.infinite = true;
+                continue;
+            }
+            if (i + 1 >= tokens.length) break;
+
+            long value;
+            try {
+                value = Long.parseLong(tokens[i + 1]);
+            } catch (NumberFormatException e) {
+                continue;
+            }
+
+            switch (token) {
+                case "depth":
+                    limits.depth = (int) Math.min(value, limits.depth);
+                    break;
+                case "movetime":
+                    limits.moveTime = value;
+                    break;
+                case "nodes":
+                    limits.nodes = value;
+                    break;
+                case "wtime":
+                    limits.whiteTime = value;
+                    break;
+                case "btime":
+                    limits.blackTime = value;
+                    break;
+                case "winc":
+                    limits.whiteIncrement = value;
+                    break;
+                case "binc":
+                    limits.blackIncrement = value;
+                    break;
+                default:
+                    // movestogo and anything else isn't used
+                    break;
+            }
+            i++;
+        }
+
+        Position root = position.copy();
+        searchStart = System.nanoTime();
+        stopRequested = false;
+        // before the thread starts, so a stop right after go still counts
+        search.arm();
+        searchThread = new Thread(
+            () -> {
+                SearchResult result = search.search(root, limits);
+
+                // an infinite search can run out of depth (say on a forced
+                // mate) but still mustn't answer before it's told to stop
+                while (limits.infinite && !stopRequested) {
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                }
+
+                // 0000 is the null move, for when there's nothing to play
+                System.out.println(
+                    "bestmove " +
+                    (result.bestMove == PackedMove.NONE
+                        ? "0000"
+                        : PackedMove.toString(result.bestMove))
+                );
+            },
+            "search"
+        );
+        searchThread.start();
+    }
+
+    private void printInfo(SearchResult result) {
+        long nodes = search.getNodes();
+        long millis = (System.nanoTime() - searchStart) / 1000000;
+
+        System.out.println(
+            "info depth " +
+            result.depth +
+            " score " +
+            (result.isMate()
+                ? "mate " + result.mateIn()
+                : "cp " + result.score) +
+            " nodes " +
+            nodes +
+            " nps " +
+            nodes * 1000 / Math.max(1, millis) +
+            " time " +
+            millis +
+            " hashfull " +
+            tt.hashfull() +
+            " pv " +
+            result.pvString()
+        );
+    }
+
+    private void stopSearch() {
+        stopRequested = true;
+        search.stop();
+        waitForSearch();
+    }
+
+    private void waitForSearch() {
+        if (searchThread == null) return;
+
+        try {
+            searchThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        searchThread = null;
+    }
+
+    // the token after key, e.g. the name in "setoption name Hash value 64"
+    private static String valueAfter(String[] tokens, String key) {
+        for (int i = 0; i < tokens.length - 1; ++i) {
+            if (tokens[i].equals(key)) return tokens[i + 1];
+        }
+        return null;
+    }
+}
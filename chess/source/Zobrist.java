@@ -0,0 +1,48 @@
+package source;
+
+/**
+ * Random keys for Zobrist hashing. A position's hash is the XOR of the key
+ * for every piece on its square, plus the side to move, castling rights and
+ * en passant file, so a move only has to XOR in and out the few keys it
+ * changes.
+ */
+public final class Zobrist {
+
+    // indexed [color][piece type][square]
+    public static final long[][][] PIECES = new long[2][6][64];
+    public static final long[] CASTLING = new long[16];
+    public static final long[] EP_FILE = new long[8];
+    public static final long SIDE;
+
+    private static long seed = 0x2F6B0E3AC7D1945BL;
+
+    static {
+        for (int color = 0; color < 2; ++color) {
+            for (int type = 0; type < 6; ++type) {
+                for (int sq = 0; sq < 64; ++sq) {
+                    PIECES[color][type][sq] = nextRandom();
+                }
+            }
+        }
+
+        for (int i = 0; i < 16; ++i) {
+            CASTLING[i] = nextRandom();
+        }
+
+        for (int i = 0; i < 8; ++i) {
+            EP_FILE[i] = nextRandom();
+        }
+
+        SIDE = nextRandom();
+    }
+
+    private Zobrist() {}
+
+    private static long nextRandom() {
+        // splitmix64, fixed seed so hashes are the same from run to run
+        long z = (seed += 0x9E3779B97F4A7C15L);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
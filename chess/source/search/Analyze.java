@@ -0,0 +1,117 @@
+package source.search;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import source.PackedMove;
+import source.Position;
+
+/**
+ * Headless bulk grading: searches every FEN/EPD line of a file (or stdin)
+ * and prints the best move, score, depth, node count and speed for each,
+ * followed by the totals.
+ *
+ * Usage: java -cp bin source.search.Analyze (depth N | movetime MS)
+ *     [hash MB] [threads N] [file]
+ */
+public class Analyze {
+
+    public static void main(String[] args) throws IOException {
+        SearchLimits limits = SearchLimits.depth(8);
+        int hash = 64;
+        int threads = 1;
+        String file = null;
+
+        for (int i = 0; i < args.length; ++i) {
+            if (args[i].equals("depth") && i + 1 < args.length) {
+                limits = SearchLimits.depth(Integer.parseInt(args[++i]));
+            } else if (args[i].equals("movetime") && i + 1 < args.length) {
+                limits = SearchLimits.moveTime(Long.parseLong(args[++i]));
+            } else if (args[i].equals("hash") && i + 1 < args.length) {
+                hash = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else {
+                file = args[i];
+            }
+        }
+
+        BufferedReader reader = new BufferedReader(
+            file == null
+                ? new InputStreamReader(System.in)
+                : new FileReader(file)
+        );
+
+        LazySmp search = new LazySmp(new TranspositionTable(hash), threads);
+        Position position = new Position();
+
+        long totalNodes = 0, totalMillis = 0;
+        int count = 0;
+
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+
+            // one bad line shouldn't cost the rest of the run
+            try {
+                position.setFen(line);
+            } catch (IllegalArgumentException e) {
+                System.err.println(
+                    "line " + lineNumber + ": " + e.getMessage()
+                );
+                continue;
+            }
+            SearchResult result = search.search(position, limits);
+
+            System.out.println(
+                position.toFen() +
+                " | bestmove " +
+                PackedMove.toString(result.bestMove) +
+                " score " +
+                formatScore(result) +
+                " depth " +
+                result.depth +
+                " nodes " +
+                result.nodes +
+                " nps " +
+                result.nps()
+            );
+
+            totalNodes += result.nodes;
+            totalMillis += result.millis;
+            count++;
+        }
+
+        reader.close();
+
+        System.out.println(
+            count +
+            " positions, " +
+            totalNodes +
+            " nodes in " +
+            totalMillis +
+            " ms (" +
+            totalNodes * 1000 / Math.max(1, totalMillis) +
+            " nps)"
+        );
+
+        long hits = search.getPawnCacheHits();
+        long misses = search.getPawnCacheMisses();
+        System.out.printf(
+            "pawn cache: %d hits, %d misses (%.1f%% hit rate)%n",
+            hits,
+            misses,
+            100.0 * hits / Math.max(1, hits + misses)
+        );
+    }
+
+    static String formatScore(SearchResult result) {
+        return result.isMate()
+            ? "mate " + result.mateIn()
+            : "cp " + result.score;
+    }
+}
@@ -0,0 +1,51 @@
+package source.search;
+
+import source.EvalWeights;
+import source.Position;
+
+/**
+ * Static evaluation in centipawns from the side to move's point of view.
+ *
+ * Position keeps middlegame and endgame totals of material and piece-square
+ * bonuses as moves are made (see EvalWeights), pawn structure comes from a
+ * PawnCache, and the result is the two blended by how much material is left.
+ */
+public final class Evaluation {
+
+    // rough piece values for search decisions, indexed by piece type; the
+    // king is never traded so it counts for 0
+    public static final int[] PIECE_VALUES = { 100, 320, 330, 500, 900, 0 };
+
+    private Evaluation() {}
+
+    // without a cache, for one-off evaluations outside of a search
+    public static int evaluate(Position position) {
+        int[] terms = new int[2];
+        long passed = PawnStructure.evaluate(position, terms);
+        return blend(position, terms, passed);
+    }
+
+    public static int evaluate(Position position, PawnCache pawns) {
+        int index = pawns.probe(position);
+        int[] terms = pawns.terms;
+        terms[0] = pawns.mg(index);
+        terms[1] = pawns.eg(index);
+        return blend(position, terms, pawns.passed(index));
+    }
+
+    private static int blend(Position position, int[] terms, long passed) {
+        PawnStructure.evaluateKings(position, passed, terms);
+
+        int mg = position.getMiddlegameScore() + terms[0];
+        int eg = position.getEndgameScore() + terms[1];
+
+        int maxPhase = EvalWeights.maxPhase();
+        // promotions can push the phase past the starting one
+        int phase = Math.min(position.getPhase(), maxPhase);
+
+        int score =
+            (mg * phase + eg * (maxPhase - phase)) / Math.max(1, maxPhase);
+
+        return position.getSideToMove() == Position.WHITE ? score : -score;
+    }
+}
@@ -0,0 +1,142 @@
+package source.search;
+
+import source.Position;
+
+/**
+ * Lazy SMP: the main search and a number of helpers all search the same
+ * root at the same time, only talking to each other through the shared
+ * transposition table. The helpers skip some depths (see Search) so their
+ * results are usually useful to the main thread rather than duplicates.
+ *
+ * Every thread has its own Search, so its own position copy, killers and
+ * history. The main search runs on the calling thread, and when it finishes
+ * the helpers are stopped and the deepest completed result is returned.
+ */
+public class LazySmp {
+
+    private final TranspositionTable tt;
+    private Search[] searches;
+    private SearchListener listener;
+    // set by arm(), so search() doesn't undo a stop() that came in since
+    private volatile boolean armed = false;
+
+    public LazySmp(TranspositionTable tt, int threads) {
+        this.tt = tt;
+        setThreads(threads);
+    }
+
+    public void setThreads(int threads) {
+        searches = new Search[Math.max(1, threads)];
+        for (int i = 0; i < searches.length; ++i) {
+            searches[i] = new Search(tt);
+            searches[i].setHelperIndex(i);
+        }
+        searches[0].setListener(listener);
+    }
+
+    public int getThreads() {
+        return searches.length;
+    }
+
+    // only the main thread reports iterations
+    public void setListener(SearchListener listener) {
+        this.listener = listener;
+        searches[0].setListener(listener);
+    }
+
+    public void stop() {
+        for (Search search : searches) {
+            search.stop();
+        }
+    }
+
+    public long getNodes() {
+        long nodes = 0;
+        for (Search search : searches) {
+            nodes += search.getNodes();
+        }
+        return nodes;
+    }
+
+    // pawn cache counters summed over every thread
+    public long getPawnCacheHits() {
+        long hits = 0;
+        for (Search search : searches) {
+            hits += search.getPawnCache().getHits();
+        }
+        return hits;
+    }
+
+    public long getPawnCacheMisses() {
+        long misses = 0;
+        for (Search search : searches) {
+            misses += search.getPawnCache().getMisses();
+        }
+        return misses;
+    }
+
+    /**
+     * Readies every thread for the next search() ahead of time. A caller
+     * that runs search() on a thread of its own calls this before starting
+     * it, so a stop() sent before that thread gets going isn't lost.
+     */
+    public void arm() {
+        for (Search search : searches) {
+            search.reset();
+        }
+        armed = true;
+    }
+
+    public SearchResult search(Position root, SearchLimits limits) {
+        tt.newSearch();
+
+        if (!armed) {
+            for (Search search : searches) {
+                search.reset();
+            }
+        }
+        armed = false;
+
+        Thread[] helpers = new Thread[searches.length - 1];
+        SearchResult[] results = new SearchResult[searches.length];
+
+        for (int i = 1; i < searches.length; ++i) {
+            final int index = i;
+            helpers[i - 1] = new Thread(
+                () -> results[index] = searches[index].run(root, limits),
+                "search-helper-" + i
+            );
+            helpers[i - 1].setDaemon(true);
+            helpers[i - 1].start();
+        }
+
+        results[0] = searches[0].run(root, limits);
+
+        stop();
+        for (Thread helper : helpers) {
+            try {
+                helper.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // a helper that got further than the main thread has the better move
+        SearchResult best = results[0];
+        for (SearchResult result : results) {
+            if (result != null && result.depth > best.depth) {
+                best = result;
+            }
+        }
+
+        long nodes = getNodes();
+        return new SearchResult(
+            best.bestMove,
+            best.score,
+            best.depth,
+            nodes,
+            results[0].millis,
+            best.pv
+        );
+    }
+}
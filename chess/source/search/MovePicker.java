@@ -0,0 +1,213 @@
+package source.search;
+
+import source.Bitboard;
+import source.MoveBuffer;
+import source.PackedMove;
+import source.Position;
+
+/**
+ * Hands out the legal moves of a node one at a time, best guesses first:
+ *
+ * <ol>
+ *  <li>the transposition table move</li>
+ *  <li>captures and queen promotions that don't lose material by static
+ *      exchange, most valuable victim / least valuable attacker first</li>
+ *  <li>the two killer moves for this ply</li>
+ *  <li>the remaining quiet moves by history score</li>
+ *  <li>the losing captures, unless only captures were asked for, in which
+ *      case they're dropped (quiescence has no use for them)</li>
+ * </ol>
+ *
+ * Each stage is only generated when the one before it runs out, so a cutoff
+ * on the TT move or a capture never pays for generating the quiet moves.
+ * Moves are picked with a partial selection sort for the same reason.
+ *
+ * A Search keeps one picker per ply and re-initialises it at every node.
+ */
+final class MovePicker {
+
+    private static final int STAGE_TT = 0;
+    private static final int STAGE_GEN_CAPTURES = 1;
+    private static final int STAGE_CAPTURES = 2;
+    private static final int STAGE_KILLER_1 = 3;
+    private static final int STAGE_KILLER_2 = 4;
+    private static final int STAGE_GEN_QUIETS = 5;
+    private static final int STAGE_QUIETS = 6;
+    private static final int STAGE_BAD_CAPTURES = 7;
+    private static final int STAGE_DONE = 8;
+
+    private final int[] moves;
+    private final int[] scores = new int[MoveBuffer.MAX_MOVES];
+    // captures that lose material, set aside until everything else is tried
+    private final int[] badCaptures = new int[MoveBuffer.MAX_MOVES];
+    private int badCount;
+    private int badIndex;
+
+    private Position position;
+    private int[][] history;
+    private int ttMove;
+    private int killer1;
+    private int killer2;
+    private boolean capturesOnly;
+
+    private int stage;
+    private int index;
+    private int count;
+
+    MovePicker(int[] moves) {
+        this.moves = moves;
+    }
+
+    /**
+     * Prepares to walk the moves of position. With capturesOnly the killer
+     * and quiet stages are skipped, which is what quiescence wants outside
+     * of check. history is indexed [from][to] for the side to move.
+     */
+    void init(
+        Position position,
+        int ttMove,
+        int killer1,
+        int killer2,
+        int[][] history,
+        boolean capturesOnly
+    ) {
+        this.position = position;
+        this.history = history;
+        this.capturesOnly = capturesOnly;
+        this.stage = STAGE_TT;
+        this.badCount = 0;
+        this.badIndex = 0;
+
+        // the TT can hand back a move from a colliding position and killers
+        // come from sibling nodes, so all three have to be checked first
+        this.ttMove = capturesOnly && !PackedMove.isCapture(ttMove)
+            ? PackedMove.NONE
+            : legalOrNone(ttMove);
+        this.killer1 = killer1 == this.ttMove ? PackedMove.NONE : killer1;
+        this.killer2 = killer2 == this.ttMove ? PackedMove.NONE : killer2;
+    }
+
+    // the next move to try, or PackedMove.NONE once they've all been handed out
+    int next() {
+        while (true) {
+            switch (stage) {
+                case STAGE_TT:
+                    stage = STAGE_GEN_CAPTURES;
+                    if (ttMove != PackedMove.NONE) return ttMove;
+                    break;
+                case STAGE_GEN_CAPTURES:
+                    count = position.generateLegalMoves(
+                        moves,
+                        0,
+                        -1L,
+                        Position.GEN_CAPTURES
+                    );
+                    index = 0;
+                    for (int i = 0; i < count; ++i) {
+                        scores[i] = mvvLva(moves[i]);
+                    }
+                    stage = STAGE_CAPTURES;
+                    break;
+                case STAGE_CAPTURES:
+                    while (index < count) {
+                        int move = pickBest();
+                        if (move == ttMove) continue;
+
+                        if (StaticExchange.see(position, move, 0)) return move;
+                        badCaptures[badCount++] = move;
+                    }
+                    stage = capturesOnly ? STAGE_DONE : STAGE_KILLER_1;
+                    break;
+                case STAGE_KILLER_1:
+                    stage = STAGE_KILLER_2;
+                    if (killer1 != PackedMove.NONE) {
+                        killer1 = legalOrNone(killer1);
+                        if (killer1 != PackedMove.NONE) return killer1;
+                    }
+                    break;
+                case STAGE_KILLER_2:
+                    stage = STAGE_GEN_QUIETS;
+                    if (killer2 != PackedMove.NONE && killer2 != killer1) {
+                        killer2 = legalOrNone(killer2);
+                        if (killer2 != PackedMove.NONE) return killer2;
+                    }
+                    break;
+                case STAGE_GEN_QUIETS:
+                    count = position.generateLegalMoves(
+                        moves,
+                        0,
+                        -1L,
+                        Position.GEN_QUIETS
+                    );
+                    index = 0;
+                    for (int i = 0; i < count; ++i) {
+                        int move = moves[i];
+                        scores[i] =
+                            history[PackedMove.from(move)][PackedMove.to(move)];
+                    }
+                    stage = STAGE_QUIETS;
+                    break;
+                case STAGE_QUIETS:
+                    while (index < count) {
+                        int move = pickBest();
+                        if (
+                            move != ttMove &&
+                            move != killer1 &&
+                            move != killer2
+                        ) {
+                            return move;
+                        }
+                    }
+                    stage = STAGE_BAD_CAPTURES;
+                    break;
+                case STAGE_BAD_CAPTURES:
+                    if (badIndex < badCount) return badCaptures[badIndex++];
+                    stage = STAGE_DONE;
+                    break;
+                default:
+                    return PackedMove.NONE;
+            }
+        }
+    }
+
+    // swaps the highest scored remaining move to index and returns it
+    private int pickBest() {
+        int best = index;
+        for (int i = index + 1; i < count; ++i) {
+            if (scores[i] > scores[best]) best = i;
+        }
+
+        int move = moves[best];
+        moves[best] = moves[index];
+        scores[best] = scores[index];
+        moves[index] = move;
+        index++;
+
+        return move;
+    }
+
+    private int legalOrNone(int move) {
+        if (move == PackedMove.NONE) return PackedMove.NONE;
+
+        // generate just the moves of the piece on the from square; this only
+        // runs before a stage fills the buffer or after it has been used up
+        int n = position.generateLegalMoves(
+            moves,
+            0,
+            Bitboard.bit(PackedMove.from(move))
+        );
+        for (int i = 0; i < n; ++i) {
+            if (moves[i] == move) return move;
+        }
+
+        return PackedMove.NONE;
+    }
+
+    private static int mvvLva(int move) {
+        int score = PackedMove.captured(move) * 8 - PackedMove.piece(move);
+        if (PackedMove.isPromotion(move)) {
+            score += PackedMove.promotionType(move) * 8;
+        }
+        return score;
+    }
+}
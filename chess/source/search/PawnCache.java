@@ -0,0 +1,91 @@
+package source.search;
+
+import java.util.Arrays;
+import source.Position;
+
+/**
+ * Small direct-mapped cache of pawn structure evaluations, keyed on the
+ * pawn-only Zobrist key. Pawn structure changes on few moves, so most
+ * lookups hit. Each search thread has its own, so there's no locking.
+ */
+public final class PawnCache {
+
+    private final long[] keys;
+    private final int[] mg;
+    private final int[] eg;
+    private final long[] passed;
+    private final int mask;
+
+    // { middlegame, endgame } scratch space for the evaluation using this
+    // cache, so it doesn't need to allocate
+    final int[] terms = new int[2];
+
+    private long hits = 0;
+    private long misses = 0;
+
+    // entries is rounded down to a power of two
+    public PawnCache(int entries) {
+        int size = Integer.highestOneBit(Math.max(1, entries));
+        keys = new long[size];
+        mg = new int[size];
+        eg = new int[size];
+        passed = new long[size];
+        mask = size - 1;
+
+        // an empty slot has to miss for every key, including the key of a
+        // position with no pawns, which is 0
+        clear();
+    }
+
+    public void clear() {
+        // no real position has a pawn on every square
+        Arrays.fill(passed, -1L);
+    }
+
+    /**
+     * The slot holding position's pawn structure, evaluated and stored
+     * first if it isn't there yet. Read it with mg(), eg() and passed().
+     */
+    int probe(Position position) {
+        long key = position.getPawnHash();
+        int index = (int) key & mask;
+
+        if (keys[index] == key && passed[index] != -1L) {
+            hits++;
+            return index;
+        }
+
+        misses++;
+        passed[index] = PawnStructure.evaluate(position, terms);
+        mg[index] = terms[0];
+        eg[index] = terms[1];
+        keys[index] = key;
+        return index;
+    }
+
+    int mg(int index) {
+        return mg[index];
+    }
+
+    int eg(int index) {
+        return eg[index];
+    }
+
+    // the passed pawns of both colors
+    long passed(int index) {
+        return passed[index];
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public double hitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : hits / (double) total;
+    }
+}
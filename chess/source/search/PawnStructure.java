@@ -0,0 +1,177 @@
+package source.search;
+
+import source.Bitboard;
+import source.EvalWeights;
+import source.Position;
+
+/**
+ * Pawn structure terms: doubled, isolated, backward and passed pawns, which
+ * only depend on where the pawns are and so can be cached on the pawn key
+ * (see PawnCache), plus the king-dependent terms that use the cached passed
+ * pawn masks.
+ *
+ * "Forward" is towards the other side: lower square numbers for white,
+ * higher for black.
+ */
+final class PawnStructure {
+
+    private static final int[] FORWARD = { -8, 8 };
+
+    // squares in front of a pawn on its own file, [color][square]
+    private static final long[][] FRONT_SPAN = new long[2][64];
+    // squares in front of a pawn on its own and the adjacent files; no enemy
+    // pawn in here makes it passed
+    private static final long[][] PASSED_SPAN = new long[2][64];
+    // adjacent file squares level with or behind a pawn, where a supporting
+    // pawn would have to be for it not to be backward
+    private static final long[][] SUPPORT_SPAN = new long[2][64];
+    // the two ranks in front of a king, one file either side
+    private static final long[][] SHIELD = new long[2][64];
+    private static final long[] ADJACENT_FILES = new long[8];
+
+    static {
+        for (int file = 0; file < 8; ++file) {
+            if (file > 0) ADJACENT_FILES[file] |= Bitboard.FILE_A << (file - 1);
+            if (file < 7) ADJACENT_FILES[file] |= Bitboard.FILE_A << (file + 1);
+        }
+
+        for (int color = 0; color < 2; ++color) {
+            for (int sq = 0; sq < 64; ++sq) {
+                int rank = Bitboard.rankOf(sq);
+                int file = Bitboard.fileOf(sq);
+                long fileMask = Bitboard.FILE_A << file;
+                long adjacent = ADJACENT_FILES[file];
+
+                long ahead = 0L, levelOrBehind = 0L;
+                for (int r = 0; r < 8; ++r) {
+                    long rankMask = Bitboard.RANK_8 << (8 * r);
+                    boolean isAhead = color == Position.WHITE
+                        ? r < rank
+                        : r > rank;
+                    if (isAhead) {
+                        ahead |= rankMask;
+                    } else {
+                        levelOrBehind |= rankMask;
+                    }
+                }
+
+                FRONT_SPAN[color][sq] = ahead & fileMask;
+                PASSED_SPAN[color][sq] = ahead & (fileMask | adjacent);
+                SUPPORT_SPAN[color][sq] = levelOrBehind & adjacent;
+
+                for (int step = 1; step <= 2; ++step) {
+                    int r = rank + (color == Position.WHITE ? -step : step);
+                    if (r < 0 || r > 7) continue;
+                    SHIELD[color][sq] |=
+                        (Bitboard.RANK_8 << (8 * r)) & (fileMask | adjacent);
+                }
+            }
+        }
+    }
+
+    private PawnStructure() {}
+
+    /**
+     * Scores the pawn-only terms into out as { middlegame, endgame } from
+     * white's side, and returns the passed pawns of both colors.
+     */
+    static long evaluate(Position position, int[] out) {
+        int mg = 0, eg = 0;
+        long passed = 0L;
+
+        for (int color = 0; color < 2; ++color) {
+            int sign = color == Position.WHITE ? 1 : -1;
+            long own = position.pieces(color, Position.PAWN);
+            long enemy = position.pieces(1 - color, Position.PAWN);
+
+            long pawns = own;
+            while (pawns != 0) {
+                int sq = Bitboard.lsb(pawns);
+                pawns &= pawns - 1;
+
+                int file = Bitboard.fileOf(sq);
+                int rank = relativeRank(sq, color);
+                boolean isolated = (own & ADJACENT_FILES[file]) == 0;
+
+                if ((own & FRONT_SPAN[color][sq]) != 0) {
+                    mg += sign * EvalWeights.PAWN_DOUBLED[0];
+                    eg += sign * EvalWeights.PAWN_DOUBLED[1];
+                }
+
+                if (isolated) {
+                    mg += sign * EvalWeights.PAWN_ISOLATED[0];
+                    eg += sign * EvalWeights.PAWN_ISOLATED[1];
+                } else if (
+                    rank < 7 &&
+                    (own & SUPPORT_SPAN[color][sq]) == 0 &&
+                    (Bitboard.PAWN_ATTACKS[color][sq + FORWARD[color]] &
+                        enemy) !=
+                    0
+                ) {
+                    // can't advance without being taken, and no pawn
+                    // beside or behind it can ever come up to defend it
+                    mg += sign * EvalWeights.PAWN_BACKWARD[0];
+                    eg += sign * EvalWeights.PAWN_BACKWARD[1];
+                }
+
+                if ((enemy & PASSED_SPAN[color][sq]) == 0) {
+                    passed |= Bitboard.bit(sq);
+
+                    mg += sign * EvalWeights.PASSED_MG[rank];
+                    eg += sign * EvalWeights.PASSED_EG[rank];
+                }
+            }
+        }
+
+        out[0] = mg;
+        out[1] = eg;
+        return passed;
+    }
+
+    /**
+     * Terms that also depend on where the kings are, so can't be cached:
+     * the pawn shield in front of each king, and how much closer each king
+     * is to the passed pawns than the other. Adds into out the same way as
+     * evaluate().
+     */
+    static void evaluateKings(Position position, long passed, int[] out) {
+        for (int color = 0; color < 2; ++color) {
+            int sign = color == Position.WHITE ? 1 : -1;
+            int ownKing = position.kingSquare(color);
+            int enemyKing = position.kingSquare(1 - color);
+
+            int shield = Long.bitCount(
+                SHIELD[color][ownKing] &
+                position.pieces(color, Position.PAWN)
+            );
+            out[0] += sign * shield * EvalWeights.PAWN_SHIELD[0];
+            out[1] += sign * shield * EvalWeights.PAWN_SHIELD[1];
+
+            long pawns = passed & position.pieces(color, Position.PAWN);
+            while (pawns != 0) {
+                int sq = Bitboard.lsb(pawns);
+                pawns &= pawns - 1;
+
+                int stop = sq + FORWARD[color];
+                if (stop < 0 || stop > 63) continue;
+
+                int lead = distance(enemyKing, stop) - distance(ownKing, stop);
+                out[0] += sign * lead * EvalWeights.PASSED_KING_DISTANCE[0];
+                out[1] += sign * lead * EvalWeights.PASSED_KING_DISTANCE[1];
+            }
+        }
+    }
+
+    private static int relativeRank(int sq, int color) {
+        int rank = Bitboard.rankOf(sq);
+        return color == Position.WHITE ? 7 - rank : rank;
+    }
+
+    // king moves from a to b
+    private static int distance(int a, int b) {
+        return Math.max(
+            Math.abs(Bitboard.rankOf(a) - Bitboard.rankOf(b)),
+            Math.abs(Bitboard.fileOf(a) - Bitboard.fileOf(b))
+        );
+    }
+}
@@ -0,0 +1,448 @@
+package source.search;
+
+import java.util.Arrays;
+import source.MoveBuffer;
+import source.PackedMove;
+import source.Position;
+
+/**
+ * Negamax alpha-beta with iterative deepening, aspiration windows and a
+ * capture-only quiescence search, backed by the shared transposition table.
+ *
+ * A Search works on its own copy of the root position and owns all of its
+ * scratch buffers and move ordering tables, so nothing is allocated per
+ * node and separate instances can run on separate threads (see LazySmp).
+ */
+public class Search {
+
+    public static final int INFINITY = 32000;
+    public static final int MATE = 31000;
+    // any score past this is a forced mate
+    public static final int MATE_BOUND = MATE - MoveBuffer.MAX_PLY;
+
+    private static final int MAX_PLY = MoveBuffer.MAX_PLY;
+    private static final int ASPIRATION_WINDOW = 25;
+    private static final int HISTORY_MAX = 1 << 20;
+    private static final int PAWN_CACHE_ENTRIES = 1 << 14;
+
+    // helper threads skip some iterations so they are usually a depth ahead
+    // of or behind the main thread and fill the table with different work
+    private static final int[] SKIP_SIZE = {
+        1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 3, 3, 4, 4, 4, 4, 4, 4, 4, 4,
+    };
+    private static final int[] SKIP_PHASE = {
+        0, 1, 0, 1, 2, 3, 0, 1, 2, 3, 4, 5, 0, 1, 2, 3, 4, 5, 6, 7,
+    };
+
+    private final TranspositionTable tt;
+    private final MoveBuffer buffer = new MoveBuffer();
+    private final PawnCache pawnCache = new PawnCache(PAWN_CACHE_ENTRIES);
+
+    // triangular principal variation table
+    private final int[][] pv = new int[MAX_PLY + 1][MAX_PLY + 1];
+    private final int[] pvLength = new int[MAX_PLY + 1];
+
+    // quiet moves that caused a beta cutoff, two per ply
+    private final int[][] killers = new int[MAX_PLY + 1][2];
+    // quiet move success by [color][from][to]
+    private final int[][][] history = new int[2][64][64];
+    private final MovePicker[] pickers = new MovePicker[MAX_PLY];
+
+    // 0 for the main thread
+    private int helperIndex = 0;
+
+    private Position position;
+    private SearchLimits limits;
+    private SearchListener listener;
+
+    private volatile boolean stopped = false;
+    private long nodes = 0;
+    private long startTime = 0;
+    private long hardDeadline = Long.MAX_VALUE;
+
+    public Search(TranspositionTable tt) {
+        this.tt = tt;
+        for (int ply = 0; ply < MAX_PLY; ++ply) {
+            pickers[ply] = new MovePicker(buffer.get(ply));
+        }
+    }
+
+    public void setListener(SearchListener listener) {
+        this.listener = listener;
+    }
+
+    // asks a running search to return as soon as possible, from any thread
+    public void stop() {
+        stopped = true;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public PawnCache getPawnCache() {
+        return pawnCache;
+    }
+
+    public SearchResult search(Position root, SearchLimits limits) {
+        stopped = false;
+        tt.newSearch();
+        return run(root, limits);
+    }
+
+    void setHelperIndex(int index) {
+        helperIndex = index;
+    }
+
+    // lets a parallel search arm its helpers before their threads start, so
+    // an early stop() can't be undone by the helper resetting itself, and
+    // the main thread's first reports don't count the last search's nodes
+    void reset() {
+        stopped = false;
+        nodes = 0;
+    }
+
+    SearchResult run(Position root, SearchLimits limits) {
+        this.position = root.copy();
+        this.limits = limits;
+        this.nodes = 0;
+        this.startTime = System.nanoTime();
+
+        int color = position.getSideToMove();
+        long softLimit = limits.softLimit(color);
+        long hardLimit = limits.hardLimit(color);
+        this.hardDeadline = hardLimit == Long.MAX_VALUE
+            ? Long.MAX_VALUE
+            : startTime + hardLimit * 1000000L;
+
+        for (int[] k : killers) {
+            k[0] = k[1] = PackedMove.NONE;
+        }
+        ageHistory();
+
+        int[] rootMoves = new int[MoveBuffer.MAX_MOVES];
+        int rootCount = position.generateLegalMoves(rootMoves, 0, -1L);
+        if (rootCount == 0) {
+            int score = position.isInCheck() ? -MATE : 0;
+            return new SearchResult(
+                PackedMove.NONE,
+                score,
+                0,
+                0,
+                0,
+                new int[0]
+            );
+        }
+
+        SearchResult result = new SearchResult(
+            rootMoves[0],
+            0,
+            0,
+            0,
+            0,
+            new int[] { rootMoves[0] }
+        );
+
+        int score = 0;
+        for (int depth = 1; depth <= limits.depth; ++depth) {
+            if (skipDepth(depth)) continue;
+
+            int alpha = -INFINITY, beta = INFINITY;
+            int delta = ASPIRATION_WINDOW;
+
+            if (depth >= 5) {
+                alpha = Math.max(score - delta, -INFINITY);
+                beta = Math.min(score + delta, INFINITY);
+            }
+
+            // re-search with a wider window whenever the score falls outside
+            while (true) {
+                int s = negamax(depth, 0, alpha, beta);
+                if (stopped) break;
+
+                if (s <= alpha) {
+                    beta = (alpha + beta) / 2;
+                    alpha = Math.max(s - delta, -INFINITY);
+                } else if (s >= beta) {
+                    beta = Math.min(s + delta, INFINITY);
+                } else {
+                    score = s;
+                    break;
+                }
+
+                delta += delta;
+            }
+
+            // a partial iteration can't be trusted, keep the last full one
+            if (stopped) break;
+
+            result = new SearchResult(
+                pv[0][0],
+                score,
+                depth,
+                nodes,
+                elapsedMillis(),
+                Arrays.copyOf(pv[0], pvLength[0])
+            );
+
+            if (listener != null && helperIndex == 0) {
+                listener.onIteration(result);
+            }
+
+            if (elapsedMillis() >= softLimit) break;
+
+            // a mate found within the full-width depth won't get any shorter
+            int mateDistance = MATE - Math.abs(score);
+            if (Math.abs(score) >= MATE_BOUND && depth >= mateDistance) break;
+        }
+
+        return new SearchResult(
+            result.bestMove,
+            result.score,
+            result.depth,
+            nodes,
+            elapsedMillis(),
+            result.pv
+        );
+    }
+
+    private int negamax(int depth, int ply, int alpha, int beta) {
+        pvLength[ply] = ply;
+
+        if (depth <= 0) return quiesce(ply, alpha, beta);
+
+        if ((++nodes & 2047) == 0) checkLimits();
+        if (stopped) return 0;
+
+        if (
+            ply > 0 &&
+            (position.isRepetition() ||
+                position.isFiftyMoveRule() ||
+                position.isInsufficientMaterial())
+        ) {
+            return 0;
+        }
+
+        if (ply >= MAX_PLY - 1) return Evaluation.evaluate(position, pawnCache);
+
+        boolean pvNode = beta - alpha > 1;
+        long key = position.getHash();
+        long entry = tt.probe(key);
+        int ttMove = PackedMove.NONE;
+
+        if (entry != 0) {
+            ttMove = TranspositionTable.move(entry);
+
+            if (
+                ply > 0 &&
+                !pvNode &&
+                TranspositionTable.depth(entry) >= depth
+            ) {
+                int ttScore = scoreFromTT(TranspositionTable.score(entry), ply);
+                int bound = TranspositionTable.bound(entry);
+
+                if (
+                    bound == TranspositionTable.BOUND_EXACT ||
+                    (bound == TranspositionTable.BOUND_LOWER &&
+                        ttScore >= beta) ||
+                    (bound == TranspositionTable.BOUND_UPPER &&
+                        ttScore <= alpha)
+                ) {
+                    return ttScore;
+                }
+            }
+        }
+
+        boolean inCheck = position.isInCheck();
+        if (inCheck) depth++;
+
+        MovePicker picker = pickers[ply];
+        picker.init(
+            position,
+            ttMove,
+            killers[ply][0],
+            killers[ply][1],
+            history[position.getSideToMove()],
+            false
+        );
+
+        int bestScore = -INFINITY;
+        int bestMove = PackedMove.NONE;
+        int originalAlpha = alpha;
+        int searched = 0;
+
+        int move;
+        while ((move = picker.next()) != PackedMove.NONE) {
+            position.makeMove(move);
+
+            int score;
+            if (searched++ == 0) {
+                score = -negamax(depth - 1, ply + 1, -beta, -alpha);
+            } else {
+                // principal variation search: prove the move is worse with a
+                // null window, and only search it properly if that fails
+                score = -negamax(depth - 1, ply + 1, -alpha - 1, -alpha);
+                if (score > alpha && score < beta) {
+                    score = -negamax(depth - 1, ply + 1, -beta, -alpha);
+                }
+            }
+
+            position.unmakeMove(move);
+
+            if (stopped) return 0;
+
+            if (score > bestScore) {
+                bestScore = score;
+                bestMove = move;
+
+                if (score > alpha) {
+                    alpha = score;
+                    updatePv(ply, move);
+
+                    if (score >= beta) {
+                        if (
+                            !PackedMove.isCapture(move) &&
+                            !PackedMove.isPromotion(move)
+                        ) {
+                            updateQuiet(move, depth, ply);
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (searched == 0) return inCheck ? -MATE + ply : 0;
+
+        int bound = bestScore >= beta
+            ? TranspositionTable.BOUND_LOWER
+            : bestScore > originalAlpha
+                ? TranspositionTable.BOUND_EXACT
+                : TranspositionTable.BOUND_UPPER;
+        tt.store(key, bestMove, scoreToTT(bestScore, ply), depth, bound);
+
+        return bestScore;
+    }
+
+    private int quiesce(int ply, int alpha, int beta) {
+        pvLength[ply] = ply;
+
+        if ((++nodes & 2047) == 0) checkLimits();
+        if (stopped) return 0;
+
+        boolean inCheck = position.isInCheck();
+        int bestScore = -INFINITY;
+
+        // out of plies to search with, however long a chain of checks is
+        if (ply >= MAX_PLY - 1) {
+            return inCheck ? 0 : Evaluation.evaluate(position, pawnCache);
+        }
+
+        // standing pat: the side to move can usually do at least as well as
+        // the static eval by not capturing, unless it's in check
+        if (!inCheck) {
+            bestScore = Evaluation.evaluate(position, pawnCache);
+            if (bestScore >= beta) return bestScore;
+            if (bestScore > alpha) alpha = bestScore;
+        }
+
+        // in check every evasion is searched, there's no standing pat
+        MovePicker picker = pickers[ply];
+        picker.init(
+            position,
+            PackedMove.NONE,
+            PackedMove.NONE,
+            PackedMove.NONE,
+            history[position.getSideToMove()],
+            !inCheck
+        );
+
+        int searched = 0;
+        int move;
+        while ((move = picker.next()) != PackedMove.NONE) {
+            searched++;
+            position.makeMove(move);
+            int score = -quiesce(ply + 1, -beta, -alpha);
+            position.unmakeMove(move);
+
+            if (stopped) return 0;
+
+            if (score > bestScore) {
+                bestScore = score;
+                if (score > alpha) {
+                    alpha = score;
+                    if (score >= beta) break;
+                }
+            }
+        }
+
+        if (inCheck && searched == 0) return -MATE + ply;
+
+        return bestScore;
+    }
+
+    private void updateQuiet(int move, int depth, int ply) {
+        if (killers[ply][0] != move) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+
+        int[] row = history[position.getSideToMove()][PackedMove.from(move)];
+        int to = PackedMove.to(move);
+        row[to] += depth * depth;
+        if (row[to] > HISTORY_MAX) ageHistory();
+    }
+
+    // halves every history score, so old successes matter less than new
+    private void ageHistory() {
+        for (int[][] color : history) {
+            for (int[] from : color) {
+                for (int to = 0; to < 64; ++to) {
+                    from[to] >>= 1;
+                }
+            }
+        }
+    }
+
+    private boolean skipDepth(int depth) {
+        if (helperIndex == 0 || depth == 1) return false;
+
+        int i = (helperIndex - 1) % SKIP_SIZE.length;
+        return ((depth + SKIP_PHASE[i]) / SKIP_SIZE[i]) % 2 != 0;
+    }
+
+    private void updatePv(int ply, int move) {
+        pv[ply][ply] = move;
+        for (int i = ply + 1; i < pvLength[ply + 1]; ++i) {
+            pv[ply][i] = pv[ply + 1][i];
+        }
+        pvLength[ply] = Math.max(pvLength[ply + 1], ply + 1);
+    }
+
+    private void checkLimits() {
+        if (
+            System.nanoTime() >= hardDeadline ||
+            (limits.nodes > 0 && nodes >= limits.nodes)
+        ) {
+            stopped = true;
+        }
+    }
+
+    private long elapsedMillis() {
+        return (System.nanoTime() - startTime) / 1000000;
+    }
+
+    // mate scores are stored relative to the node, not the root, so they
+    // stay correct when the entry is found again at a different ply
+    private static int scoreToTT(int score, int ply) {
+        if (score >= MATE_BOUND) return score + ply;
+        if (score <= -MATE_BOUND) return score - ply;
+        return score;
+    }
+
+    private static int scoreFromTT(int score, int ply) {
+        if (score >= MATE_BOUND) return score - ply;
+        if (score <= -MATE_BOUND) return score + ply;
+        return score;
+    }
+}
@@ -0,0 +1,81 @@
+package source.search;
+
+import source.MoveBuffer;
+import source.Position;
+
+/**
+ * When a search should stop: a fixed depth, a fixed time per move, a node
+ * budget, or a share of the remaining clock.
+ */
+public class SearchLimits {
+
+    public int depth = MoveBuffer.MAX_PLY - 1;
+    public long moveTime = 0; // ms, 0 for none
+    public long nodes = 0; // 0 for none
+    public boolean infinite = false;
+
+    // clock state in ms, negative when there's no clock
+    public long whiteTime = -1;
+    public long blackTime = -1;
+    public long whiteIncrement = 0;
+    public long blackIncrement = 0;
+
+    // time kept back for the move to actually reach the board
+    private static final long OVERHEAD = 30;
+
+    public static SearchLimits depth(int depth) {
+        SearchLimits limits = new SearchLimits();
+        limits.depth = depth;
+        return limits;
+    }
+
+    public static SearchLimits moveTime(long millis) {
+        SearchLimits limits = new SearchLimits();
+        limits.moveTime = millis;
+        return limits;
+    }
+
+    public static SearchLimits clock(
+        long whiteTime,
+        long blackTime,
+        long whiteIncrement,
+        long blackIncrement
+    ) {
+        SearchLimits limits = new SearchLimits();
+        limits.whiteTime = whiteTime;
+        limits.blackTime = blackTime;
+        limits.whiteIncrement = whiteIncrement;
+        limits.blackIncrement = blackIncrement;
+        return limits;
+    }
+
+    /**
+     * After this many ms a new iteration isn't started, since it would very
+     * likely not finish. Long.MAX_VALUE if time doesn't matter.
+     */
+    public long softLimit(int color) {
+        if (infinite) return Long.MAX_VALUE;
+        if (moveTime > 0) return moveTime;
+
+        long time = color == Position.WHITE ? whiteTime : blackTime;
+        long inc = color == Position.WHITE ? whiteIncrement : blackIncrement;
+        if (time < 0) return Long.MAX_VALUE;
+
+        // assume about 30 more moves, and bank most of the increment
+        return Math.max(1, Math.min(time / 30 + inc * 3 / 4, time / 4));
+    }
+
+    // the search is aborted mid-iteration after this many ms
+    public long hardLimit(int color) {
+        if (infinite) return Long.MAX_VALUE;
+        if (moveTime > 0) return Math.max(1, moveTime - OVERHEAD);
+
+        long time = color == Position.WHITE ? whiteTime : blackTime;
+        if (time < 0) return Long.MAX_VALUE;
+
+        return Math.max(
+            1,
+            Math.min(softLimit(color) * 3, time / 2 - OVERHEAD)
+        );
+    }
+}
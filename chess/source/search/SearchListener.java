@@ -0,0 +1,9 @@
+package source.search;
+
+/**
+ * Told about each finished iteration while a search is still running, for
+ * streaming progress somewhere (UCI info lines, a status bar...).
+ */
+public interface SearchListener {
+    void onIteration(SearchResult result);
+}
@@ -0,0 +1,56 @@
+package source.search;
+
+import source.PackedMove;
+
+/**
+ * Outcome of one completed iteration, or of the whole search. Scores are
+ * in centipawns from the side to move's point of view.
+ */
+public class SearchResult {
+
+    public final int bestMove;
+    public final int score;
+    public final int depth;
+    public final long nodes;
+    public final long millis;
+    public final int[] pv;
+
+    public SearchResult(
+        int bestMove,
+        int score,
+        int depth,
+        long nodes,
+        long millis,
+        int[] pv
+    ) {
+        this.bestMove = bestMove;
+        this.score = score;
+        this.depth = depth;
+        this.nodes = nodes;
+        this.millis = millis;
+        this.pv = pv;
+    }
+
+    public long nps() {
+        return nodes * 1000 / Math.max(1, millis);
+    }
+
+    public boolean isMate() {
+        return Math.abs(score) >= Search.MATE_BOUND;
+    }
+
+    // moves to mate, negative when the side to move is getting mated
+    public int mateIn() {
+        int plies = Search.MATE - Math.abs(score);
+        return (score > 0 ? 1 : -1) * ((plies + 1) / 2);
+    }
+
+    public String pvString() {
+        StringBuilder sb = new StringBuilder();
+        for (int move : pv) {
+            if (sb.length() > 0) sb.append(' ');
+            sb.append(PackedMove.toString(move));
+        }
+        return sb.toString();
+    }
+}
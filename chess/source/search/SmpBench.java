@@ -0,0 +1,67 @@
+package source.search;
+
+import source.Position;
+
+/**
+ * Lazy SMP scaling: searches a fixed set of positions to a fixed depth with
+ * 1, 2, 4, 8 and 16 threads and reports the time to depth and the speedup
+ * over one thread. The table is cleared before every position so each run
+ * starts cold.
+ *
+ * Usage: java -cp bin source.search.SmpBench [depth] [hash MB]
+ */
+public class SmpBench {
+
+    private static final int[] THREADS = { 1, 2, 4, 8, 16 };
+
+    private static final String[] POSITIONS = {
+        Position.START_FEN,
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+        "r1bqk2r/1pp2ppp/p1np1n2/2b1p3/2B1P3/2PP1N2/PP1N1PPP/R1BQK2R w KQkq - 0 7",
+        "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+        "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+    };
+
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 6;
+        int hash = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+
+        TranspositionTable tt = new TranspositionTable(hash);
+
+        // one untimed pass so the single thread run isn't paying for the JIT
+        runAll(new LazySmp(tt, 1), tt, Math.max(1, depth - 2));
+
+        long baseline = 0;
+        for (int threads : THREADS) {
+            LazySmp smp = new LazySmp(tt, threads);
+
+            long start = System.nanoTime();
+            long nodes = runAll(smp, tt, depth);
+            long millis = Math.max(1, (System.nanoTime() - start) / 1000000);
+
+            if (threads == 1) baseline = millis;
+
+            System.out.printf(
+                "threads %2d: %7d ms %12d nodes %10d nps  speedup %.2fx%n",
+                threads,
+                millis,
+                nodes,
+                nodes * 1000 / millis,
+                baseline / (double) millis
+            );
+        }
+    }
+
+    private static long runAll(LazySmp smp, TranspositionTable tt, int depth) {
+        long nodes = 0;
+        Position position = new Position();
+
+        for (String fen : POSITIONS) {
+            tt.clear();
+            position.setFen(fen);
+            nodes += smp.search(position, SearchLimits.depth(depth)).nodes;
+        }
+
+        return nodes;
+    }
+}
@@ -0,0 +1,109 @@
+package source.search;
+
+import source.Bitboard;
+import source.PackedMove;
+import source.Position;
+
+/**
+ * Static exchange evaluation: plays out every capture and recapture on a
+ * move's to square, cheapest attacker first, on occupancy bitboards alone,
+ * so nothing is made on the position. Taking a piece off the occupancy
+ * uncovers any slider lined up behind it (an x-ray), which then joins the
+ * exchange. Pins are ignored.
+ */
+public final class StaticExchange {
+
+    private StaticExchange() {}
+
+    /**
+     * Whether move comes out at least threshold centipawns ahead for the
+     * side making it once the exchange on its to square has been played
+     * out, with either side free to stop recapturing whenever that's better.
+     */
+    public static boolean see(Position position, int move, int threshold) {
+        if (PackedMove.isCastle(move)) return threshold <= 0;
+
+        int[] values = Evaluation.PIECE_VALUES;
+        int from = PackedMove.from(move);
+        int to = PackedMove.to(move);
+        int captured = PackedMove.captured(move);
+        int mover = PackedMove.isPromotion(move)
+            ? PackedMove.promotionType(move)
+            : PackedMove.piece(move);
+
+        // what we're up after the first capture, less what we wanted
+        int swap = captured == Position.EMPTY ? 0 : values[captured];
+        if (PackedMove.isPromotion(move)) {
+            swap += values[mover] - values[Position.PAWN];
+        }
+        swap -= threshold;
+        if (swap < 0) return false;
+
+        // even losing the moving piece for nothing is still good enough
+        swap = values[mover] - swap;
+        if (swap <= 0) return true;
+
+        long occupied =
+            position.occupied() ^ Bitboard.bit(from) ^ Bitboard.bit(to);
+        if (PackedMove.flags(move) == PackedMove.EP_CAPTURE) {
+            occupied ^= Bitboard.bit(Position.epCaptureSquare(from, to));
+        }
+
+        long bishops =
+            position.pieces(Position.WHITE, Position.BISHOP) |
+            position.pieces(Position.BLACK, Position.BISHOP) |
+            position.pieces(Position.WHITE, Position.QUEEN) |
+            position.pieces(Position.BLACK, Position.QUEEN);
+        long rooks =
+            position.pieces(Position.WHITE, Position.ROOK) |
+            position.pieces(Position.BLACK, Position.ROOK) |
+            position.pieces(Position.WHITE, Position.QUEEN) |
+            position.pieces(Position.BLACK, Position.QUEEN);
+
+        long attackers = position.attackersTo(to, occupied);
+        int side = position.colorAt(from);
+        // 1 while the last capture made leaves the side that made the move
+        // at or above the threshold
+        int result = 1;
+
+        while (true) {
+            side ^= 1;
+            attackers &= occupied;
+
+            long ours = attackers & position.colorOccupancy(side);
+            if (ours == 0) break;
+
+            result ^= 1;
+
+            int type = Position.PAWN;
+            long bb = ours & position.pieces(side, type);
+            while (bb == 0 && type < Position.KING) {
+                bb = ours & position.pieces(side, ++type);
+            }
+
+            // the king can only take last, when nothing can take it back
+            if (type == Position.KING) {
+                long theirs = attackers & position.colorOccupancy(side ^ 1);
+                return (theirs != 0 ? result ^ 1 : result) != 0;
+            }
+
+            swap = values[type] - swap;
+            if (swap < result) break;
+
+            occupied ^= Long.lowestOneBit(bb);
+
+            if (
+                type == Position.PAWN ||
+                type == Position.BISHOP ||
+                type == Position.QUEEN
+            ) {
+                attackers |= Bitboard.bishopAttacks(to, occupied) & bishops;
+            }
+            if (type == Position.ROOK || type == Position.QUEEN) {
+                attackers |= Bitboard.rookAttacks(to, occupied) & rooks;
+            }
+        }
+
+        return result != 0;
+    }
+}
@@ -0,0 +1,206 @@
+package source.search;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * Fixed-size hash table of search results, shared by every search thread
+ * without locks.
+ *
+ * Each entry is two longs: the position key XORed with the data, and the
+ * data itself. A reader recomputes key ^ data and only trusts the entry if
+ * that matches, so an entry half overwritten by another thread just looks
+ * like a miss instead of handing back another position's result. Each long
+ * is read and written with opaque access, which keeps the individual 64-bit
+ * accesses atomic without paying for fences.
+ *
+ * Entries are grouped in buckets of four (one 64 byte cache line). A store
+ * goes to the entry with the same key if there is one, otherwise it replaces
+ * whichever entry is shallowest, with entries from older searches counted
+ * as shallower.
+ *
+ * <pre>
+ *  data bits  0-21  best move (PackedMove)
+ *  data bits 22-37  score, signed
+ *  data bits 38-45  depth, signed
+ *  data bits 46-47  bound type
+ *  data bits 48-55  search generation
+ *  data bit  56     set on every stored entry, so data is never 0
+ * </pre>
+ */
+public final class TranspositionTable {
+
+    public static final int BOUND_NONE = 0;
+    public static final int BOUND_UPPER = 1;
+    public static final int BOUND_LOWER = 2;
+    public static final int BOUND_EXACT = 3;
+
+    private static final int BUCKET_ENTRIES = 4;
+    private static final int LONGS_PER_BUCKET = BUCKET_ENTRIES * 2;
+    private static final int BYTES_PER_BUCKET = LONGS_PER_BUCKET * 8;
+
+    private static final VarHandle SLOTS =
+        MethodHandles.arrayElementVarHandle(long[].class);
+
+    private long[] table;
+    private int buckets;
+    private volatile int generation = 0;
+
+    public TranspositionTable(int megabytes) {
+        resize(megabytes);
+    }
+
+    /**
+     * Replaces the table with an empty one of about megabytes. Not safe
+     * while anything is searching: table and buckets are plain fields that
+     * change one after the other, so a concurrent probe could index the old
+     * table with the new bucket count. Callers wait for the search to
+     * finish first (Uci does before every setoption), and a search thread
+     * started afterwards sees the new table because Thread.start publishes
+     * everything written before it.
+     */
+    public void resize(int megabytes) {
+        long bytes = Math.max(1, megabytes) * 1024L * 1024L;
+        buckets = (int) Math.min(
+            bytes / BYTES_PER_BUCKET,
+            Integer.MAX_VALUE / LONGS_PER_BUCKET
+        );
+        table = new long[buckets * LONGS_PER_BUCKET];
+    }
+
+    public void clear() {
+        Arrays.fill(table, 0L);
+        generation = 0;
+    }
+
+    // called once per root search so older entries age out first
+    public void newSearch() {
+        generation = (generation + 1) & 0xFF;
+    }
+
+    /**
+     * The data stored for key, or 0 if there is none. Use the static
+     * accessors to unpack it.
+     */
+    public long probe(long key) {
+        int base = bucketBase(key);
+
+        for (int i = 0; i < BUCKET_ENTRIES; ++i) {
+            int slot = base + i * 2;
+            long data = (long) SLOTS.getOpaque(table, slot + 1);
+            long check = (long) SLOTS.getOpaque(table, slot);
+
+            if (data != 0 && (check ^ data) == key) return data;
+        }
+
+        return 0L;
+    }
+
+    public void store(long key, int move, int score, int depth, int bound) {
+        int base = bucketBase(key);
+        int gen = generation;
+
+        int replace = base;
+        int worst = Integer.MAX_VALUE;
+
+        for (int i = 0; i < BUCKET_ENTRIES; ++i) {
+            int slot = base + i * 2;
+            long data = (long) SLOTS.getOpaque(table, slot + 1);
+            long check = (long) SLOTS.getOpaque(table, slot);
+
+            if (data == 0 || (check ^ data) == key) {
+                // keep the old best move rather than forget it
+                if (move == 0 && data != 0) move = move(data);
+
+                // don't let a shallow non-exact result clobber a deeper one
+                // from this same search
+                if (
+                    data != 0 &&
+                    bound != BOUND_EXACT &&
+                    generation(data) == gen &&
+                    depth(data) > depth + 2
+                ) {
+                    return;
+                }
+
+                replace = slot;
+                break;
+            }
+
+            int age = (gen - generation(data)) & 0xFF;
+            int value = depth(data) - age * 8;
+            if (value < worst) {
+                worst = value;
+                replace = slot;
+            }
+        }
+
+        long data = pack(move, score, depth, bound, gen);
+        SLOTS.setOpaque(table, replace, key ^ data);
+        SLOTS.setOpaque(table, replace + 1, data);
+    }
+
+    // permille of sampled entries written by the current search
+    public int hashfull() {
+        int gen = generation;
+        int used = 0;
+        int sample = Math.min(1000 / BUCKET_ENTRIES, buckets);
+
+        for (int b = 0; b < sample; ++b) {
+            for (int i = 0; i < BUCKET_ENTRIES; ++i) {
+                long data = (long) SLOTS.getOpaque(
+                    table,
+                    b * LONGS_PER_BUCKET + i * 2 + 1
+                );
+                if (data != 0 && generation(data) == gen) used++;
+            }
+        }
+
+        return used * 1000 / (sample * BUCKET_ENTRIES);
+    }
+
+    public static int move(long data) {
+        return (int) (data & 0x3FFFFF);
+    }
+
+    public static int score(long data) {
+        return (short) (data >>> 22);
+    }
+
+    public static int depth(long data) {
+        return (byte) (data >>> 38);
+    }
+
+    public static int bound(long data) {
+        return (int) (data >>> 46) & 3;
+    }
+
+    private static int generation(long data) {
+        return (int) (data >>> 48) & 0xFF;
+    }
+
+    private static long pack(
+        int move,
+        int score,
+        int depth,
+        int bound,
+        int generation
+    ) {
+        return (
+            (move & 0x3FFFFFL) |
+            ((score & 0xFFFFL) << 22) |
+            ((depth & 0xFFL) << 38) |
+            ((long) bound << 46) |
+            ((long) generation << 48) |
+            (1L << 56)
+        );
+    }
+
+    private int bucketBase(long key) {
+        // maps the top 32 bits of the key onto [0, buckets) without needing
+        // a power of two bucket count
+        long index = ((key >>> 32) * buckets) >>> 32;
+        return (int) index * LONGS_PER_BUCKET;
+    }
+}